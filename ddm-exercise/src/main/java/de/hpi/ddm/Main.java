@@ -2,6 +2,7 @@ package de.hpi.ddm;
 
 import de.hpi.ddm.configuration.Configuration;
 import de.hpi.ddm.singletons.ConfigurationSingleton;
+import de.hpi.ddm.structures.HintTable;
 import de.hpi.ddm.systems.MasterSystem;
 import de.hpi.ddm.systems.WorkerSystem;
 
@@ -13,6 +14,8 @@ public class Main {
 		
 		if (conf.getRole().equals(MasterSystem.MASTER_ROLE))
 	        MasterSystem.start();
+		else if (conf.getRole().equals(HintTable.COMMAND))
+			HintTable.write(conf.getHintTableDirectory(), conf.getHintChars());
 	    else
 	        WorkerSystem.start();
 	}
@@ -1,13 +1,24 @@
 package de.hpi.ddm.actors;
 
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 
 import akka.actor.AbstractLoggingActor;
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
 import akka.actor.Props;
-import akka.japi.Pair;
+import de.hpi.ddm.singletons.ConfigurationSingleton;
+import de.hpi.ddm.singletons.DatasetDescriptorSingleton;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectRBTreeMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectSortedMap;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -17,11 +28,22 @@ public class Collector extends AbstractLoggingActor {
 	////////////////////////
 	// Actor Construction //
 	////////////////////////
-	
+
 	public static final String DEFAULT_NAME = "collector";
 
 	public static Props props() {
-		return Props.create(Collector.class);
+		return props(Paths.get(ConfigurationSingleton.get().getOutputFile()), ConfigurationSingleton.get().getReorderWindow(),
+				DatasetDescriptorSingleton.get().getValueSeparator());
+	}
+
+	public static Props props(Path outputFile, int reorderWindow, char valueSeparator) {
+		return Props.create(Collector.class, () -> new Collector(outputFile, reorderWindow, valueSeparator));
+	}
+
+	public Collector(Path outputFile, int reorderWindow, char valueSeparator) {
+		this.outputFile = outputFile;
+		this.reorderWindow = Math.max(1, reorderWindow);
+		this.valueSeparator = valueSeparator;
 	}
 
 	////////////////////
@@ -39,20 +61,51 @@ public class Collector extends AbstractLoggingActor {
 	public static class PrintMessage implements Serializable {
 		private static final long serialVersionUID = -267778464637901383L;
 	}
-	
+
+	@Data
+	private static class FlushMessage implements Serializable {
+		private static final long serialVersionUID = 4186413562079341925L;
+	}
+
 	/////////////////
 	// Actor State //
 	/////////////////
-	
-	private final List<Pair<String, Integer>> results = new ArrayList<>();
-	
+
+	private static final Duration FLUSH_INTERVAL = Duration.ofSeconds(1);
+	private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+	private final Path outputFile;
+	private final int reorderWindow;
+	private final char valueSeparator;
+
+	// The results that arrived before some result with a smaller line ID; they wait here until they are next in line.
+	private final Int2ObjectSortedMap<String> pendingResults = new Int2ObjectRBTreeMap<>();
+	private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+	private FileChannel channel;
+	private Cancellable flushTimer;
+	private int nextLineID = 1;
+	private int numWritten = 0;
+	private int numOutOfOrder = 0;
+	private boolean unsynced = false;
+
 	/////////////////////
 	// Actor Lifecycle //
 	/////////////////////
 
 	@Override
-	public void preStart() {
+	public void preStart() throws Exception {
 		Reaper.watchWithDefaultReaper(this);
+
+		this.channel = FileChannel.open(this.outputFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		this.append("ID" + this.valueSeparator + "Password\n");
+		this.flushTimer = this.context().system().scheduler().scheduleWithFixedDelay(FLUSH_INTERVAL, FLUSH_INTERVAL,
+				this.self(), new FlushMessage(), this.context().dispatcher(), ActorRef.noSender());
+	}
+
+	@Override
+	public void postStop() throws Exception {
+		this.flushTimer.cancel();
+		this.close();
 	}
 
 	////////////////////
@@ -63,18 +116,97 @@ public class Collector extends AbstractLoggingActor {
 	public Receive createReceive() {
 		return receiveBuilder()
 				.match(CollectMessage.class, this::handle)
+				.match(FlushMessage.class, this::handle)
 				.match(PrintMessage.class, this::handle)
 				.matchAny(object -> this.log().info("Received unknown message: \"{}\"", object.toString()))
 				.build();
 	}
 
-	protected void handle(CollectMessage message) {
+	protected void handle(CollectMessage message) throws IOException {
 		this.log().info("Collector received password");
-		this.results.add(new Pair<>(message.getResult(), message.getLineID()));
+
+		if (message.getLineID() < this.nextLineID) {
+			// Its place has already been given up to keep the reorder window bounded.
+			this.numOutOfOrder++;
+			this.write(message.getLineID(), message.getResult());
+			return;
+		}
+
+		this.pendingResults.put(message.getLineID(), message.getResult());
+		this.writeInOrder();
+
+		// A full window means that some line ID is missing or very late; give its place up and move on with the smallest
+		// pending line ID, so that the window does not grow with the dataset.
+		while (this.pendingResults.size() > this.reorderWindow) {
+			this.nextLineID = this.pendingResults.firstIntKey();
+			this.writeInOrder();
+		}
+	}
+
+	protected void handle(FlushMessage message) throws IOException {
+		this.flush();
+	}
+
+	protected void handle(PrintMessage message) throws IOException {
+		this.close();
+		this.log().info("Wrote {} results to {}{}", this.numWritten, this.outputFile.toAbsolutePath(),
+				this.numOutOfOrder == 0 ? "" : " (" + this.numOutOfOrder + " of them out of line ID order)");
+	}
+
+	// Writes the pending results from nextLineID on for as long as their line IDs are consecutive.
+	private void writeInOrder() throws IOException {
+		String result;
+		while ((result = this.pendingResults.remove(this.nextLineID)) != null)
+			this.write(this.nextLineID++, result);
+	}
+
+	private void write(int lineID, String result) throws IOException {
+		this.append(lineID + String.valueOf(this.valueSeparator) + result + "\n");
+		this.numWritten++;
 	}
-	
-	protected void handle(PrintMessage message) {
-		this.results.sort(Comparator.comparingInt(Pair::second));
-		this.results.forEach(result -> this.log().info("{}", result.first()));
+
+	private void append(String line) throws IOException {
+		byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > this.writeBuffer.remaining())
+			this.drain();
+		if (bytes.length > this.writeBuffer.remaining())
+			this.writeFully(ByteBuffer.wrap(bytes));
+		else
+			this.writeBuffer.put(bytes);
+	}
+
+	private void drain() throws IOException {
+		this.writeBuffer.flip();
+		this.writeFully(this.writeBuffer);
+		this.writeBuffer.clear();
+	}
+
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			this.channel.write(buffer);
+		this.unsynced = true;
+	}
+
+	// Makes everything written so far durable; called by the flush timer, so that a crashed job leaves its results behind.
+	private void flush() throws IOException {
+		if (this.channel == null || !this.channel.isOpen())
+			return;
+		if (this.writeBuffer.position() > 0)
+			this.drain();
+		if (this.unsynced) {
+			this.channel.force(false);
+			this.unsynced = false;
+		}
+	}
+
+	// Writes the results that still wait for a missing line ID in line ID order and closes the file.
+	private void close() throws IOException {
+		if (this.channel == null || !this.channel.isOpen())
+			return;
+		for (Int2ObjectMap.Entry<String> entry : this.pendingResults.int2ObjectEntrySet())
+			this.write(entry.getIntKey(), entry.getValue());
+		this.pendingResults.clear();
+		this.flush();
+		this.channel.close();
 	}
 }
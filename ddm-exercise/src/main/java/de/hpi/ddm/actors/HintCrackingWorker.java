@@ -4,17 +4,24 @@ import akka.actor.AbstractLoggingActor;
 import akka.actor.ActorRef;
 import akka.actor.PoisonPill;
 import akka.actor.Props;
-import akka.japi.Pair;
+import akka.actor.Status;
+import akka.dispatch.MessageDispatcher;
+import akka.pattern.Patterns;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import de.hpi.ddm.actors.utils.CancellationToken;
+import de.hpi.ddm.actors.utils.SliceTimer;
 import de.hpi.ddm.actors.utils.Util;
+import de.hpi.ddm.singletons.ConfigurationSingleton;
+import de.hpi.ddm.structures.HintDictionary;
+import de.hpi.ddm.structures.HintTable;
 
+import java.io.IOException;
 import java.io.Serializable;
-import java.time.Instant;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public class HintCrackingWorker extends AbstractLoggingActor {
 
@@ -24,19 +31,29 @@ public class HintCrackingWorker extends AbstractLoggingActor {
 
     public static final String DEFAULT_NAME = "hint_cracking_worker";
     private static final int calculationDuration = 1; // 1 second.
-    private static final String yieldSignalString = "yield";
 
-    public static Props props(String[] hints, String passwordChars) {
-        return Props.create(HintCrackingWorker.class, hints, passwordChars);
+    // Cracks only the permutations that miss the character at missingCharIndex and start with prefix, but reports every hint of the dictionary they match.
+    public static Props props(HintDictionary hintDictionary, String passwordChars, int missingCharIndex, String prefix) {
+        return props(hintDictionary, passwordChars, missingCharIndex, prefix, false, new CancellationToken());
     }
 
-    public HintCrackingWorker(String[] hints, String passwordChars) {
-        this.hints = new ArrayList<>(Arrays.asList(hints));
-        this.hintIndicesNotCrackedYet = new ArrayList<>();
-        for(int i = 0; i < this.hints.size(); i++){
-            hintIndicesNotCrackedYet.add(i);
-        }
+    // If singleLine is set, the dictionary holds the hints of one line, which has at most one hint without the character
+    // at missingCharIndex, so that the permutations are done after the first hit. The worker stops once cancellation is cancelled.
+    public static Props props(HintDictionary hintDictionary, String passwordChars, int missingCharIndex, String prefix, boolean singleLine,
+            CancellationToken cancellation) {
+        return Props.create(HintCrackingWorker.class, () -> new HintCrackingWorker(hintDictionary, passwordChars, missingCharIndex, prefix, singleLine, cancellation));
+    }
+
+    public HintCrackingWorker(HintDictionary hintDictionary, String passwordChars, int missingCharIndex, String prefix, boolean singleLine,
+            CancellationToken cancellation) {
+        this.hintDictionary = hintDictionary;
         this.passwordChars = passwordChars;
+        this.prefix = prefix;
+        this.singleLine = singleLine;
+        this.cancellation = cancellation;
+        this.currentPasswordIndex = missingCharIndex;
+        this.lastPasswordIndex = missingCharIndex + 1;
+        this.hintTable = openHintTable(passwordChars);
         this.getHintCharacterResumable();
     }
 
@@ -50,20 +67,38 @@ public class HintCrackingWorker extends AbstractLoggingActor {
         private static final long serialVersionUID = 889237489237984798L;
     }
 
+    // Piped back from the cracking dispatcher once an offloaded slice of the permutations is done.
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    private static class SliceCrackedMessage implements Serializable {
+        private static final long serialVersionUID = 4650952370143380513L;
+        private boolean finished;
+    }
+
     /////////////////
     // Actor State //
     /////////////////
 
-    private ArrayList<String> hints;
-    private ArrayList<Integer> hintIndicesNotCrackedYet;
+    private HintDictionary hintDictionary;
+    private HintTable hintTable; // Only set if the hints of this alphabet have been precomputed.
+    // Offloaded slices report their hints from the cracking dispatcher, where the actor context must not be used.
+    private final ActorRef parent = this.context().parent();
+    private final MessageDispatcher crackingDispatcher = ConfigurationSingleton.get().isOffloadCracking()
+            ? this.context().system().dispatchers().lookup(PasswordCrackingWorker.CRACKING_DISPATCHER) : null;
     private String passwordChars;
-    private long startTime;
+    private String prefix;
+    private boolean singleLine; // Each missing character has at most one hint, so its permutations are done after the first hit.
+    private CancellationToken cancellation;
+    private final SliceTimer sliceTimer = new SliceTimer(calculationDuration, TimeUnit.SECONDS);
 
     private int currentPasswordIndex;
+    private int lastPasswordIndex;
 
-    private char[] passwordCharacters;
-    private char[] currentPasswordChars;
-    private char[] permutationArray;
+    private byte[] passwordCharacters;
+    private byte[] currentPasswordChars;
+    private byte[] permutationArray; // The fixed prefix followed by the characters that Heap's algorithm permutes.
+    private final byte[] digestBuffer = new byte[Util.DIGEST_LENGTH];
 
     private int[] heapStack;
     private int heapPermutationIndex;
@@ -78,49 +113,88 @@ public class HintCrackingWorker extends AbstractLoggingActor {
     ////////////////////
 
     private void getHintCharacterResumable() {
-        startTime = Instant.now().getEpochSecond();
-        boolean increasedInt = false;
-        if (passwordCharacters == null || currentPasswordChars == null) {
-            passwordCharacters = passwordChars.toCharArray();
-            currentPasswordChars = new char[passwordCharacters.length - 1];
-            currentPasswordIndex = 0;
-            increasedInt = true;
+        if (crackingDispatcher != null) {
+            Patterns.pipe(CompletableFuture.supplyAsync(this::crackSlice, crackingDispatcher)
+                    .thenApply(SliceCrackedMessage::new), crackingDispatcher).to(this.self());
+            return;
+        }
+        finishSlice(crackSlice());
+    }
+
+    // Returns false if the calculation time is up and true if all missing characters are done.
+    private boolean crackSlice() {
+        if (hintTable != null) {
+            return lookUpHints();
         }
-        for (; currentPasswordIndex < passwordChars.length(); currentPasswordIndex++) {
-            // Copy current chars.
-            System.arraycopy(passwordCharacters, 0, currentPasswordChars, 0, currentPasswordIndex);
-            System.arraycopy(passwordCharacters, currentPasswordIndex + 1, currentPasswordChars, currentPasswordIndex, currentPasswordChars.length - currentPasswordIndex);
-            if (increasedInt) {
-                permutationArray = Arrays.copyOf(currentPasswordChars, currentPasswordChars.length);
+        sliceTimer.startSlice();
+        if (passwordCharacters == null) {
+            passwordCharacters = Util.toBytes(passwordChars);
+            currentPasswordChars = new byte[passwordCharacters.length - 1];
+        }
+        for (; currentPasswordIndex < lastPasswordIndex && !cancellation.isCancelled(); currentPasswordIndex++) {
+            if (heapStack == null) {
+                // Copy current chars.
+                System.arraycopy(passwordCharacters, 0, currentPasswordChars, 0, currentPasswordIndex);
+                System.arraycopy(passwordCharacters, currentPasswordIndex + 1, currentPasswordChars, currentPasswordIndex, currentPasswordChars.length - currentPasswordIndex);
+                permutationArray = Util.toBytes(prefix + Util.removeChars(new String(currentPasswordChars, StandardCharsets.US_ASCII), prefix));
             }
             // Get permutations and test. Yield when time is up.
-            HintPermutationIndexPair crackedHint = heapAlgorithmForTaubeNuesschen();
-            // Send continue message and stop on yield.
-            if (crackedHint != null && crackedHint.permutation.equals(yieldSignalString)) {
-                // this.log().info("Yielding");
-                this.self().tell(new ContinueCrackingMessage(), this.sender());
-                return;
-            }
-            // If hint cracked, send hint and reset state.
-            else if (crackedHint != null) {
-                char hintCharacter = passwordCharacters[currentPasswordIndex];
-                //this.log().info("Cracked hint!!!!!!!!!!!!!!!!!!!!!!!!!!!!!! " + hintCharacter);
-                this.context().parent().tell(new PasswordCrackingWorker.HintCrackedMessage(hintCharacter, crackedHint.index, crackedHint.permutation), this.self());
-                this.hintIndicesNotCrackedYet.remove(new Integer(crackedHint.index));
+            if (!heapAlgorithmForTaubeNuesschen()) {
+                return false;
             }
             heapStack = null;
-            increasedInt = true;
         }
-        for(Integer i: hintIndicesNotCrackedYet){
-            this.log().error("Could not crack hint: " + hints.get(i) + "!");
-            throw new IllegalStateException("Could not Crack Hint: " + hints.get(i) + "!");
+        return true;
+    }
+
+    private void finishSlice(boolean finished) {
+        if (!finished) {
+            // this.log().info("Yielding");
+            this.self().tell(new ContinueCrackingMessage(), this.self());
+            return;
         }
         resetState();
         this.self().tell(PoisonPill.getInstance(), ActorRef.noSender());
     }
 
+    private HintTable openHintTable(String passwordChars) {
+        String hintTableDirectory = ConfigurationSingleton.get().getHintTableDirectory();
+        if (hintTableDirectory.isEmpty()) {
+            return null;
+        }
+        try {
+            return HintTable.open(hintTableDirectory, passwordChars);
+        } catch (IOException e) {
+            this.log().error(e, "Could not open the hint table of " + passwordChars + "; cracking its hints instead.");
+            return null;
+        }
+    }
+
+    // Resolves the hints in the precomputed table instead of hashing the permutations; always finishes in one slice. The
+    // Master hands out a single unit with an empty prefix per missing character then, so each hint is looked up once.
+    private boolean lookUpHints() {
+        for (; currentPasswordIndex < lastPasswordIndex && !cancellation.isCancelled(); currentPasswordIndex++) {
+            char hintCharacter = passwordChars.charAt(currentPasswordIndex);
+            for (int position = 0; position < hintDictionary.size() && !cancellation.isCancelled(); position++) {
+                hintDictionary.getDigest(position, digestBuffer);
+                String permutation = hintTable.find(digestBuffer, currentPasswordIndex);
+                if (permutation == null || !permutation.startsWith(prefix)) {
+                    continue;
+                }
+                int hintIndex = hintDictionary.getEntry(position);
+                this.parent.tell(new PasswordCrackingWorker.HintCrackedMessage(hintCharacter, hintIndex, permutation), this.self());
+                if (singleLine) {
+                    // A line has exactly one hint per missing character.
+                    break;
+                }
+            }
+        }
+        return true;
+    }
+
     private void resetState() {
-        hints = null;
+        hintDictionary = null;
+        hintTable = null;
         passwordChars = null;
 
         passwordCharacters = null;
@@ -130,21 +204,12 @@ public class HintCrackingWorker extends AbstractLoggingActor {
         heapStack = null;
     }
 
-    private static class HintPermutationIndexPair {
-        String permutation;
-        int index;
-
-        HintPermutationIndexPair(String permutation, int index) {
-            this.permutation = permutation;
-            this.index = index;
-        }
-    }
-
-
     @Override
     public Receive createReceive() {
         return receiveBuilder()
                 .match(ContinueCrackingMessage.class, this::handle)
+                .match(SliceCrackedMessage.class, message -> this.finishSlice(message.finished))
+                .match(Status.Failure.class, message -> this.parent.tell(message, this.self())) // The parent stops with its tasks.
                 .matchAny(object -> this.log().info("Received unknown message: \"{}\"", object.toString()))
                 .build();
     }
@@ -154,56 +219,69 @@ public class HintCrackingWorker extends AbstractLoggingActor {
         getHintCharacterResumable();
     }
 
-    private HintPermutationIndexPair heapAlgorithmForTaubeNuesschen() {
+    // Returns false if the calculation time is up and true if the current missing character needs no further permutations.
+    private boolean heapAlgorithmForTaubeNuesschen() {
+        int offset = prefix.length();
+        int numPermutedChars = permutationArray.length - offset;
         if (heapStack == null) {
-            heapStack = new int[currentPasswordChars.length];
-            for (int i = 0; i < currentPasswordChars.length; i++) {
+            heapStack = new int[numPermutedChars];
+            for (int i = 0; i < numPermutedChars; i++) {
                 heapStack[i] = 0;
             }
             heapPermutationIndex = 1;
-        }
 
-        String currentPermutation = new String(permutationArray);
-        int result = testPermutation(currentPermutation);
-        // cracked hint at index result.
-        if (result >= 0) {
-            return new HintPermutationIndexPair(currentPermutation, result);
+            if (testPermutation()) {
+                return true;
+            }
         }
-        while (heapPermutationIndex < currentPasswordChars.length) {
+        // The time is only checked after each block of steps.
+        int blockStepsLeft = sliceTimer.getBlockSize();
+        while (heapPermutationIndex < numPermutedChars) {
             if (heapStack[heapPermutationIndex] < heapPermutationIndex) {
                 int charPos = heapPermutationIndex % 2 == 0 ? 0 : heapStack[heapPermutationIndex];
 
-                char temp = permutationArray[charPos];
-                permutationArray[charPos] = permutationArray[heapPermutationIndex];
-                permutationArray[heapPermutationIndex] = temp;
+                byte temp = permutationArray[offset + charPos];
+                permutationArray[offset + charPos] = permutationArray[offset + heapPermutationIndex];
+                permutationArray[offset + heapPermutationIndex] = temp;
 
-                currentPermutation = new String(permutationArray);
-                result = testPermutation(currentPermutation);
-                if (result >= 0) {
-                    return new HintPermutationIndexPair(currentPermutation, result);
-                }
                 heapStack[heapPermutationIndex]++;
                 heapPermutationIndex = 1;
+
+                if (testPermutation()) {
+                    return true;
+                }
             } else {
                 heapStack[heapPermutationIndex] = 0;
                 heapPermutationIndex++;
             }
-            if (Instant.now().getEpochSecond() - startTime > calculationDuration) {
-                return new HintPermutationIndexPair(yieldSignalString, -1);
+            if (--blockStepsLeft == 0) {
+                if (cancellation.isCancelled()) {
+                    return true; // crackSlice() stops as well.
+                }
+                if (sliceTimer.finishBlock()) {
+                    return false;
+                }
+                blockStepsLeft = sliceTimer.getBlockSize();
             }
         }
-        return null;
+        return true;
     }
 
-    private int testPermutation(String permutation) {
-        String hashedPermutation = Util.hash(permutation);
-        for (Integer i: hintIndicesNotCrackedYet) {
-            if(hashedPermutation.equals(hints.get(i))){
-                return i;
-            }
+    // Reports every hint that the current permutation cracks; returns true if the current missing character is done.
+    private boolean testPermutation() {
+        Util.hash(permutationArray, permutationArray.length, digestBuffer);
+        int position = hintDictionary.find(digestBuffer);
+        if (position < 0) {
+            return false;
+        }
+        char hintCharacter = (char) passwordCharacters[currentPasswordIndex];
+        String permutation = new String(permutationArray, StandardCharsets.US_ASCII);
+        for (; hintDictionary.matches(position, digestBuffer); position++) {
+            int hintIndex = hintDictionary.getEntry(position);
+            //this.log().info("Cracked hint!!!!!!!!!!!!!!!!!!!!!!!!!!!!!! " + hintCharacter);
+            this.parent.tell(new PasswordCrackingWorker.HintCrackedMessage(hintCharacter, hintIndex, permutation), this.self());
         }
-        return -1;
+        // A line has exactly one hint per missing character, but a shared dictionary holds many lines.
+        return singleLine;
     }
-
-
 }
@@ -1,13 +1,39 @@
 package de.hpi.ddm.actors;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
-import java.util.concurrent.Callable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
 
 import akka.actor.*;
-import akka.serialization.JavaSerializer;
+import akka.dispatch.MessageDispatcher;
+import akka.pattern.Patterns;
+import akka.serialization.Serialization;
+import akka.serialization.SerializationExtension;
+import akka.serialization.Serializer;
+import akka.serialization.Serializers;
+import akka.stream.Materializer;
+import akka.stream.SourceRef;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.stream.javadsl.StreamRefs;
+import akka.util.ByteString;
+import com.twitter.chill.KryoPool;
+import com.twitter.chill.SerDeState;
+import de.hpi.ddm.singletons.ConfigurationSingleton;
+import de.hpi.ddm.singletons.KryoPoolSingleton;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -19,10 +45,19 @@ public class LargeMessageProxy extends AbstractLoggingActor {
 	////////////////////////
 
 	public static final String DEFAULT_NAME = "largeMessageProxy";
+	public static final String CHUNK_TRANSPORT = "chunks"; // Chunks with the proxies' own windowed acknowledgement protocol.
+	public static final String STREAM_TRANSPORT = "stream"; // Chunks streamed through a SourceRef with the backpressure of Akka Streams.
+	public static final String NO_CODEC = "none";
+	public static final String DEFLATE_CODEC = "deflate"; // Deflate at its fastest level, which trades the least CPU time for bandwidth.
+	public static final String CODEC_DISPATCHER = "codec-dispatcher"; // Messages are compressed here, so that the proxy keeps acknowledging and sending meanwhile.
 
 	//static int messageSize = 6 * 1024 * 1024;
 	static int messageSize = 262144 / 2; // Pi mal daumen offset, damit genug platz fuer die anderen member variablen in der message ist.
-	private int messageIDCounter= 0;
+	private static final Duration retransmissionTimeout = Duration.ofSeconds(3); // Unacknowledged chunks are sent again if a transfer made no progress for this long.
+	private static final int maxRetransmissions = 10; // A transfer is given up if its receiver did not acknowledge anything after this many retransmissions.
+	private static final int numCompletedTransfersToRemember = 1024; // Late duplicates of completed transfers must not be delivered again.
+	private static final int maxControlChunks = 1; // Transfers of at most this many chunks are control messages that overtake the bulk transfers.
+	private int transferIDCounter = 0;
 	
 	public static Props props() {
 		return Props.create(LargeMessageProxy.class);
@@ -51,37 +86,224 @@ public class LargeMessageProxy extends AbstractLoggingActor {
 	public static class BytesPartMessage implements Serializable {
 		private static final long serialVersionUID = 10000000000000000L;
 		private byte[] bytes;
-		private String messageId;
+		private int transferId;
+		private int numBytes;
+		private String codec;
+		private int numDecodedBytes;
 		private int numChunks;
 		private int chunkId;
+		private int offset;
 		private ActorRef sender;
 		private ActorRef receiver;
 		private ActorRef sendingProxy;
 	}
 
+	// Cumulative acknowledgement: the receiving proxy holds all chunks before numChunksReceived.
 	@Data @NoArgsConstructor @AllArgsConstructor
 	public static class ReceivedBytesPartMessage implements Serializable {
 		private static final long serialVersionUID = 1337L;
-		private String messageId;
-		private int chunkId;
+		private int transferId;
+		private int numChunksReceived;
 		private ActorRef sendingProxy;
 	}
 
-	private String getMessageID(){
-		this.messageIDCounter = (this.messageIDCounter + 1) % Integer.MAX_VALUE;
-		return this.self().toString() + this.messageIDCounter;
+	// The receiving proxy pulls the chunks of the message from a SourceRef. Kryo cannot recreate SourceRefs, so the
+	// message carries it as serialized by Akka's own stream ref serializer.
+	@Data @NoArgsConstructor @AllArgsConstructor
+	public static class StreamedMessage implements Serializable {
+		private static final long serialVersionUID = 8391547502264087315L;
+		private byte[] sourceRef;
+		private int serializerId;
+		private String manifest;
+		private int numBytes;
+		private String codec;
+		private int numDecodedBytes;
+		private ActorRef sender;
+		private ActorRef receiver;
+	}
+
+	// Piped back to the receiving proxy once a stream is complete.
+	@Data @NoArgsConstructor @AllArgsConstructor
+	private static class StreamReceivedMessage implements Serializable {
+		private static final long serialVersionUID = 2205962306419137370L;
+		private byte[] bytes;
+		private String codec;
+		private int numDecodedBytes;
+		private ActorRef sender;
+		private ActorRef receiver;
+	}
+
+	// Piped back to the sending proxy once a message has been compressed on the codec dispatcher; never leaves the system.
+	@Data @AllArgsConstructor
+	private static class EncodedMessage {
+		private ChunkOutputStream chunks;
+		private int numDecodedBytes;
+		private long nanos;
+		private ActorRef sender;
+		private ActorRef receiver;
+	}
+
+	@Data @NoArgsConstructor
+	private static class RetransmitMessage implements Serializable {
+		private static final long serialVersionUID = 6271850946286612201L;
+	}
+
+	// The chunks of a message that are in flight are those from numAcked up to numSent.
+	private static class OutgoingTransfer {
+		private final int transferId;
+		private final BytesPartMessage[] chunks;
+		private final ActorSelection receiverProxy;
+		private final boolean bulk;
+		private int numAcked = 0;
+		private int numSent = 0;
+		private boolean scheduled = false;
+		private boolean progressed = true;
+		private int numRetransmissions = 0;
+
+		private OutgoingTransfer(int transferId, BytesPartMessage[] chunks, ActorSelection receiverProxy) {
+			this.transferId = transferId;
+			this.chunks = chunks;
+			this.receiverProxy = receiverProxy;
+			this.bulk = chunks.length > maxControlChunks;
+		}
+	}
+
+	// Transfer IDs are only unique per sending proxy, so the receiving proxy tells transfers apart by both.
+	@Data
+	private static class TransferKey {
+		private final ActorRef sendingProxy;
+		private final int transferId;
+	}
+
+	// The chunks of a message may arrive out of order or twice; numReceived counts the chunks received without a gap.
+	// Each chunk is copied into the message's bytes on arrival, so that the receiver holds the message only once.
+	private static class IncomingTransfer {
+		private final byte[] bytes;
+		private final BitSet receivedChunks;
+		private int numReceived = 0;
+		private boolean progressed = true;
+		private int numTicksWithoutProgress = 0;
+
+		private IncomingTransfer(int numBytes, int numChunks) {
+			this.bytes = new byte[numBytes];
+			this.receivedChunks = new BitSet(numChunks);
+		}
+	}
+
+	// Sums up the sizes and times of all messages that a proxy encoded or decoded with a codec.
+	private static class CodecMetrics {
+		private int numMessages = 0;
+		private long numDecodedBytes = 0;
+		private long numEncodedBytes = 0;
+		private long nanos = 0;
+
+		private void add(long numDecodedBytes, long numEncodedBytes, long nanos) {
+			this.numMessages++;
+			this.numDecodedBytes += numDecodedBytes;
+			this.numEncodedBytes += numEncodedBytes;
+			this.nanos += nanos;
+		}
+
+		private static double ratio(long numDecodedBytes, long numEncodedBytes) {
+			return numDecodedBytes / (double) Math.max(1, numEncodedBytes);
+		}
+	}
+
+	// Cuts everything written to it into chunks of messageSize bytes without buffering the whole message a second time.
+	private static class ChunkOutputStream extends OutputStream {
+		private final ArrayList<byte[]> chunks = new ArrayList<>();
+		private byte[] chunk;
+		private int chunkLength;
+		private int numBytes;
+
+		@Override
+		public void write(int b) {
+			this.write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			while (len > 0) {
+				if (this.chunk == null || this.chunkLength == this.chunk.length) {
+					this.chunk = new byte[Math.min(messageSize, len)];
+					this.chunkLength = 0;
+					this.chunks.add(this.chunk);
+				}
+				int length = Math.min(this.chunk.length - this.chunkLength, len);
+				System.arraycopy(b, off, this.chunk, this.chunkLength, length);
+				this.chunkLength += length;
+				this.numBytes += length;
+				off += length;
+				len -= length;
+			}
+		}
+
+		public ArrayList<byte[]> getChunks() {
+			return this.chunks;
+		}
+
+		public int getNumBytes() {
+			return this.numBytes;
+		}
+	}
+
+	private int getTransferID() {
+		return this.transferIDCounter++;
 	}
 
 	/////////////////
 	// Actor State //
 	/////////////////
 
-	private final HashMap<String, byte [][]> receivedBytePartLargeMessages = new HashMap<>();
-	private final HashMap<String, BytesPartMessage[]> msgsToSend = new HashMap<>();
+	private final HashMap<TransferKey, IncomingTransfer> receivedBytePartLargeMessages = new HashMap<>();
+	private final LinkedHashMap<TransferKey, Integer> completedTransfers = new LinkedHashMap<TransferKey, Integer>() {
+		private static final long serialVersionUID = 3360213658711412954L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<TransferKey, Integer> eldest) {
+			return this.size() > numCompletedTransfersToRemember;
+		}
+	};
+	private final Int2ObjectOpenHashMap<OutgoingTransfer> msgsToSend = new Int2ObjectOpenHashMap<>();
+	private final ArrayDeque<OutgoingTransfer> bulkTransfers = new ArrayDeque<>(); // Bulk transfers with unsent chunks, served round-robin.
+	private int numBulkChunksInFlight = 0;
+	private final KryoPool kryoPool = KryoPoolSingleton.get(this.context().system());
+	private final int windowSize = Math.max(1, ConfigurationSingleton.get().getLargeMessageWindow());
+	private final boolean localDelivery = ConfigurationSingleton.get().isLargeMessageLocalDelivery();
+	private final boolean streamTransport = STREAM_TRANSPORT.equals(ConfigurationSingleton.get().getLargeMessageTransport());
+	private final String codec = ConfigurationSingleton.get().getLargeMessageCodec();
+	private final int compressionThreshold = ConfigurationSingleton.get().getLargeMessageCompressionThreshold();
+	private final CodecMetrics compressionMetrics = new CodecMetrics();
+	private final CodecMetrics decompressionMetrics = new CodecMetrics();
+	private final MessageDispatcher codecDispatcher = this.context().system().dispatchers().lookup(CODEC_DISPATCHER);
+	private final Materializer materializer = Materializer.createMaterializer(this.getContext());
+	private final Serialization serialization = SerializationExtension.get(this.context().system());
+	private Cancellable retransmissionTimer;
 
 	/////////////////////
 	// Actor Lifecycle //
 	/////////////////////
+
+	@Override
+	public void preStart() throws Exception {
+		super.preStart();
+		this.retransmissionTimer = this.context().system().scheduler().scheduleWithFixedDelay(retransmissionTimeout, retransmissionTimeout,
+				this.self(), new RetransmitMessage(), this.context().dispatcher(), ActorRef.noSender());
+	}
+
+	@Override
+	public void postStop() throws Exception {
+		super.postStop();
+		this.retransmissionTimer.cancel();
+		this.logMetrics("Compressed", this.compressionMetrics);
+		this.logMetrics("Decompressed", this.decompressionMetrics);
+	}
+
+	private void logMetrics(String action, CodecMetrics metrics) {
+		if (metrics.numMessages > 0)
+			this.log().info(String.format("%s %d messages: %d bytes decoded, %d bytes encoded (ratio %.2f) in %d ms.", action, metrics.numMessages,
+					metrics.numDecodedBytes, metrics.numEncodedBytes, CodecMetrics.ratio(metrics.numDecodedBytes, metrics.numEncodedBytes), metrics.nanos / 1000000));
+	}
 	
 	@Override
 	public Receive createReceive() {
@@ -89,6 +311,11 @@ public class LargeMessageProxy extends AbstractLoggingActor {
 				.match(LargeMessage.class, this::handle)
 				.match(BytesPartMessage.class, this::handle)
 				.match(ReceivedBytesPartMessage.class, this::handle)
+				.match(RetransmitMessage.class, this::handle)
+				.match(EncodedMessage.class, this::handle)
+				.match(StreamedMessage.class, this::handle)
+				.match(StreamReceivedMessage.class, this::handle)
+				.match(Status.Failure.class, message -> this.log().error(message.cause(), "Compressing or streaming a large message failed."))
 				.matchAny(object -> this.log().info("Received unknown message: \"{}\"", object.toString()))
 				.build();
 	}
@@ -100,7 +327,12 @@ public class LargeMessageProxy extends AbstractLoggingActor {
 	private void handle(LargeMessage<?> largeMessage) throws IOException {
 		ActorRef sender = this.sender();
 		ActorRef receiver = largeMessage.getReceiver();
-		ActorSelection receiverProxy = this.context().actorSelection(receiver.path().child(DEFAULT_NAME));
+
+		// A receiver in this actor system can share the message object; serializing and chunking it would only copy it.
+		if (this.localDelivery && receiver.path().address().hasLocalScope()) {
+			receiver.tell(largeMessage.getMessage(), sender);
+			return;
+		}
 
 		// The following code sends the entire message wrapped in a BytesMessage, which will definitely fail in a distributed setting if the message is large!
 		// Solution options:
@@ -113,75 +345,244 @@ public class LargeMessageProxy extends AbstractLoggingActor {
 		// - To split an object, serialize it into a byte array and then send the byte array range-by-range (tip: try "KryoPoolSingleton.get()").
 		// - If you serialize a message manually and send it, it will, of course, be serialized again by Akka's message passing subsystem.
 		// - But: Good, language-dependent serializers (such as kryo) are aware of byte arrays so that their serialization is very effective w.r.t. serialization time and size of serialized data.
-		byte[] serializedMessage = new byte[0];
-		try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
-			ObjectOutputStream oos = new ObjectOutputStream(bos);
-			oos.writeObject(largeMessage.getMessage());
-			oos.flush();
-			serializedMessage = bos.toByteArray();
-		}
-		int chunkID = 0;
-		String msgID = this.getMessageID();
-		int numChunks =  (int) Math.ceil(serializedMessage.length / (double)messageSize);
+
+		// The message is serialized with kryo into a pooled buffer, which is (compressed and) cut into the chunks right away.
+		ChunkOutputStream chunks = new ChunkOutputStream();
+		int numDecodedBytes;
+		SerDeState kryo = this.kryoPool.borrow();
+		try {
+			kryo.writeClassAndObject(largeMessage.getMessage());
+			numDecodedBytes = kryo.numOfWrittenBytes();
+			// Small messages are not worth the CPU time; the receiver learns the codec of each transfer from its chunks.
+			if (numDecodedBytes >= this.compressionThreshold && DEFLATE_CODEC.equals(this.codec)) {
+				this.deflate(kryo, numDecodedBytes, sender, receiver);
+				kryo = null; // The codec dispatcher releases the buffer.
+				return;
+			}
+			kryo.writeOutputTo(chunks);
+		} finally {
+			if (kryo != null)
+				this.kryoPool.release(kryo);
+		}
+		this.transmit(chunks, NO_CODEC, numDecodedBytes, sender, receiver);
+	}
+
+	// Deflating a message of some megabytes takes seconds, during which the proxy would neither acknowledge chunks nor
+	// send control transfers. Like the bulk transfers, which interleave, compressed messages do not keep their order.
+	private void deflate(SerDeState kryo, int numDecodedBytes, ActorRef sender, ActorRef receiver) {
+		CompletableFuture<EncodedMessage> encodedMessage = CompletableFuture.supplyAsync(() -> {
+			long start = System.nanoTime();
+			ChunkOutputStream chunks = new ChunkOutputStream();
+			Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+			try {
+				DeflaterOutputStream deflaterOutputStream = new DeflaterOutputStream(chunks, deflater, messageSize);
+				kryo.writeOutputTo(deflaterOutputStream);
+				deflaterOutputStream.finish();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} finally {
+				deflater.end();
+				this.kryoPool.release(kryo);
+			}
+			return new EncodedMessage(chunks, numDecodedBytes, System.nanoTime() - start, sender, receiver);
+		}, this.codecDispatcher);
+		Patterns.pipe(encodedMessage, this.codecDispatcher).to(this.self());
+	}
+
+	private void handle(EncodedMessage message) {
+		ChunkOutputStream chunks = message.getChunks();
+		this.compressionMetrics.add(message.getNumDecodedBytes(), chunks.getNumBytes(), message.getNanos());
+		this.log().debug(String.format("Compressed a message from %d to %d bytes (ratio %.2f) in %d ms.", message.getNumDecodedBytes(), chunks.getNumBytes(),
+				CodecMetrics.ratio(message.getNumDecodedBytes(), chunks.getNumBytes()), message.getNanos() / 1000000));
+		this.transmit(chunks, DEFLATE_CODEC, message.getNumDecodedBytes(), message.getSender(), message.getReceiver());
+	}
+
+	private void transmit(ChunkOutputStream chunks, String codec, int numDecodedBytes, ActorRef sender, ActorRef receiver) {
+		ActorSelection receiverProxy = this.context().actorSelection(receiver.path().child(DEFAULT_NAME));
+		if (this.streamTransport) {
+			// The chunks are only pulled once the receiving proxy runs the stream.
+			SourceRef<ByteString> bytes = Source.from(chunks.getChunks())
+					.map(ByteString::fromArrayUnsafe)
+					.runWith(StreamRefs.sourceRef(), this.materializer);
+			Serializer serializer = this.serialization.findSerializerFor(bytes);
+			// Unlike the serializer itself, serialize() writes the SourceRef's actor with the address of this system.
+			StreamedMessage streamedMessage = new StreamedMessage(this.serialization.serialize(bytes).get(), serializer.identifier(),
+					Serializers.manifestFor(serializer, bytes), chunks.getNumBytes(), codec, numDecodedBytes, sender, receiver);
+			receiverProxy.tell(streamedMessage, this.self());
+			return;
+		}
+
+		int transferID = this.getTransferID();
+		int numChunks = chunks.getChunks().size();
 		BytesPartMessage[] msgs = new BytesPartMessage[numChunks];
-		for (int i = 0; i < serializedMessage.length; i += messageSize){
-			byte[] msg = Arrays.copyOfRange(serializedMessage, i, Math.min(i + messageSize, serializedMessage.length));
-			msgs[chunkID] = new BytesPartMessage(msg, msgID, numChunks, chunkID, sender, receiver, this.self());
-			chunkID++;
+		for (int chunkID = 0, offset = 0; chunkID < numChunks; offset += msgs[chunkID].getBytes().length, chunkID++)
+			msgs[chunkID] = new BytesPartMessage(chunks.getChunks().get(chunkID), transferID, chunks.getNumBytes(), codec, numDecodedBytes, numChunks, chunkID, offset, sender, receiver, this.self());
+
+		OutgoingTransfer transfer = new OutgoingTransfer(transferID, msgs, receiverProxy);
+		this.msgsToSend.put(transferID, transfer);
+		this.send(transfer);
+	}
+
+	private Object deserialize(byte[] bytes, String codec, int numDecodedBytes) throws DataFormatException {
+		if (DEFLATE_CODEC.equals(codec))
+			bytes = this.inflate(bytes, numDecodedBytes);
+		return this.kryoPool.fromBytes(bytes);
+	}
+
+	private byte[] inflate(byte[] bytes, int numDecodedBytes) throws DataFormatException {
+		long start = System.nanoTime();
+		byte[] decodedBytes = new byte[numDecodedBytes];
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(bytes);
+			int length = 0;
+			while (length < numDecodedBytes && !inflater.finished() && !inflater.needsInput())
+				length += inflater.inflate(decodedBytes, length, numDecodedBytes - length);
+			if (length != numDecodedBytes)
+				throw new DataFormatException("Inflated " + length + " instead of " + numDecodedBytes + " bytes.");
+		} finally {
+			inflater.end();
 		}
-		receiverProxy.tell(msgs[0], this.self());
-		msgsToSend.put(msgID, msgs);
+		this.decompressionMetrics.add(numDecodedBytes, bytes.length, System.nanoTime() - start);
+		return decodedBytes;
 	}
 
-	private void handle(ReceivedBytesPartMessage message){
-		BytesPartMessage[] msgs = msgsToSend.get(message.getMessageId());
-		if (message.getChunkId() == msgs.length - 1) {
-			msgsToSend.remove(message.getMessageId());
-		} else {
-			message.getSendingProxy().tell(msgs[message.getChunkId() + 1], this.self());
+	// Control transfers are sent right away, so that they never wait behind bulk data. The chunks of the bulk transfers
+	// share a window of windowSize chunks in flight; it is filled round-robin, one chunk per transfer and turn.
+	private void send(OutgoingTransfer transfer) {
+		if (!transfer.bulk) {
+			for (; transfer.numSent < transfer.chunks.length; transfer.numSent++)
+				transfer.receiverProxy.tell(transfer.chunks[transfer.numSent], this.self());
+			return;
+		}
+		if (!transfer.scheduled && transfer.numSent < transfer.chunks.length) {
+			transfer.scheduled = true;
+			this.bulkTransfers.add(transfer);
 		}
+		this.sendBulkChunks();
+	}
 
+	private void sendBulkChunks() {
+		while (this.numBulkChunksInFlight < this.windowSize && !this.bulkTransfers.isEmpty()) {
+			OutgoingTransfer transfer = this.bulkTransfers.poll();
+			transfer.receiverProxy.tell(transfer.chunks[transfer.numSent++], this.self());
+			this.numBulkChunksInFlight++;
+			if (transfer.numSent < transfer.chunks.length)
+				this.bulkTransfers.add(transfer);
+			else
+				transfer.scheduled = false;
+		}
 	}
 
-	private void handle(BytesPartMessage message) throws IOException, ClassNotFoundException {
+	// Moves a transfer's chunks in flight and keeps the number of bulk chunks in flight up to date.
+	private void setInFlight(OutgoingTransfer transfer, int numAcked, int numSent) {
+		if (transfer.bulk)
+			this.numBulkChunksInFlight += (numSent - numAcked) - (transfer.numSent - transfer.numAcked);
+		transfer.numAcked = numAcked;
+		transfer.numSent = numSent;
+	}
+
+	private void handle(ReceivedBytesPartMessage message) {
+		OutgoingTransfer transfer = this.msgsToSend.get(message.getTransferId());
+		// Acknowledgements of retransmitted chunks may arrive after the transfer is done.
+		if (transfer == null || message.getNumChunksReceived() <= transfer.numAcked)
+			return;
+
+		this.setInFlight(transfer, message.getNumChunksReceived(), Math.max(transfer.numSent, message.getNumChunksReceived()));
+		transfer.progressed = true;
+		transfer.numRetransmissions = 0;
+		if (transfer.numAcked == transfer.chunks.length)
+			this.msgsToSend.remove(message.getTransferId());
+		this.sendBulkChunks();
+	}
+
+	private void handle(RetransmitMessage message) {
+		// The sender gives a transfer up after maxRetransmissions ticks without an acknowledgement, or dies with its node;
+		// the buffer of an incoming transfer that got no new chunk for longer than that would never be freed otherwise.
+		this.receivedBytePartLargeMessages.entrySet().removeIf(entry -> {
+			IncomingTransfer transfer = entry.getValue();
+			if (transfer.progressed) {
+				transfer.progressed = false;
+				transfer.numTicksWithoutProgress = 0;
+				return false;
+			}
+			if (++transfer.numTicksWithoutProgress <= maxRetransmissions + 1)
+				return false;
+			this.log().warning("Dropping the incomplete transfer of {} from {}: no new chunk after {} retransmission timeouts.",
+					entry.getKey().getTransferId(), entry.getKey().getSendingProxy(), transfer.numTicksWithoutProgress);
+			return true;
+		});
+
+		// Transfers without any acknowledgement since the last check have probably lost chunks; go back to the first unacknowledged one.
+		// A bulk transfer without chunks in flight only waits for the window, so it has nothing to lose and keeps its count.
+		this.msgsToSend.values().removeIf(transfer -> {
+			if (transfer.progressed) {
+				transfer.progressed = false;
+				return false;
+			}
+			if (transfer.numSent == transfer.numAcked)
+				return false;
+			this.setInFlight(transfer, transfer.numAcked, transfer.numAcked);
+			if (++transfer.numRetransmissions > maxRetransmissions) {
+				this.log().error("Giving up the transfer of {} to {}: no acknowledgement after {} retransmissions.",
+						transfer.transferId, transfer.receiverProxy, maxRetransmissions);
+				if (transfer.scheduled)
+					this.bulkTransfers.remove(transfer);
+				return true;
+			}
+			this.send(transfer);
+			return false;
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	private void handle(StreamedMessage message) {
+		SourceRef<ByteString> sourceRef = (SourceRef<ByteString>) this.serialization
+				.deserialize(message.getSourceRef(), message.getSerializerId(), message.getManifest()).get();
+		// The chunks are copied into the message's bytes as they stream in.
+		byte[] bytes = new byte[message.getNumBytes()];
+		CompletionStage<StreamReceivedMessage> receivedMessage = sourceRef.getSource()
+				.runWith(Sink.fold(0, (offset, chunk) -> offset + chunk.copyToBuffer(ByteBuffer.wrap(bytes, offset, chunk.length()))), this.materializer)
+				.thenApply(numBytes -> new StreamReceivedMessage(bytes, message.getCodec(), message.getNumDecodedBytes(), message.getSender(), message.getReceiver()));
+		Patterns.pipe(receivedMessage, this.context().dispatcher()).to(this.self());
+	}
+
+	private void handle(StreamReceivedMessage message) throws DataFormatException {
+		Object sendObject = this.deserialize(message.getBytes(), message.getCodec(), message.getNumDecodedBytes());
+		message.getReceiver().tell(sendObject, message.getSender());
+	}
+
+	private void handle(BytesPartMessage message) throws DataFormatException {
+		TransferKey transferKey = new TransferKey(message.getSendingProxy(), message.getTransferId());
+		Integer numChunksOfCompletedTransfer = this.completedTransfers.get(transferKey);
+		if (numChunksOfCompletedTransfer != null) {
+			// A duplicate of a delivered message; its acknowledgement got lost.
+			message.getSendingProxy().tell(new ReceivedBytesPartMessage(message.getTransferId(), numChunksOfCompletedTransfer, this.self()), this.self());
+			return;
+		}
+
 		// New message.
-		String messageId = message.getMessageId();
-		if (!receivedBytePartLargeMessages.containsKey(messageId)) {
-			receivedBytePartLargeMessages.put(messageId, new byte[message.getNumChunks()][]);
+		IncomingTransfer transfer = this.receivedBytePartLargeMessages.computeIfAbsent(transferKey, key -> new IncomingTransfer(message.getNumBytes(), message.getNumChunks()));
+		if (!transfer.receivedChunks.get(message.getChunkId())) {
+			System.arraycopy(message.getBytes(), 0, transfer.bytes, message.getOffset(), message.getBytes().length);
+			transfer.receivedChunks.set(message.getChunkId());
+			transfer.progressed = true;
 		}
-		byte[][] receivedBytePartMessages = receivedBytePartLargeMessages.get(messageId);
-		receivedBytePartMessages[message.getChunkId()] = message.getBytes();
+		transfer.numReceived = transfer.receivedChunks.nextClearBit(transfer.numReceived);
 
 		// Received whole message.
-		if (message.getChunkId() == receivedBytePartMessages.length - 1){
-			// Get large message byte size.
-			int msgSize = 0;
-			for (byte[] bytePartMessage : receivedBytePartMessages) {
-				msgSize += bytePartMessage.length;
-			}
-			// Copy two dimensional large message to one dimensional array.
-			byte [] largeMessageBytes = new byte[msgSize];
-			int index = 0;
-			for (byte[] receivedBytePartMessage : receivedBytePartMessages) {
-				for (byte b : receivedBytePartMessage) {
-					largeMessageBytes[index++] = b;
-				}
-			}
+		if (transfer.numReceived == message.getNumChunks()) {
 			// Deserialize object.
-			Object sendObject = JavaSerializer.currentSystem().withValue( (ExtendedActorSystem) context().system(), (Callable<Object>) () -> {
-				ByteArrayInputStream bis = new ByteArrayInputStream(largeMessageBytes);
-				ObjectInputStream ois = new ObjectInputStream(bis);
-				return ois.readObject();
-			});
-
+			Object sendObject = this.deserialize(transfer.bytes, message.getCodec(), message.getNumDecodedBytes());
 
 			// Reset internal message buffer.
-			receivedBytePartLargeMessages.remove(messageId);
+			receivedBytePartLargeMessages.remove(transferKey);
+			completedTransfers.put(transferKey, message.getNumChunks());
 			// Send large message.
 			message.getReceiver().tell(sendObject, message.getSender());
 		}
 		// Acknowledge receive.
 		// Better as the last step.
-		message.getSendingProxy().tell(new ReceivedBytesPartMessage(message.getMessageId(), message.getChunkId(), this.self()), this.self());
+		message.getSendingProxy().tell(new ReceivedBytesPartMessage(message.getTransferId(), transfer.numReceived, this.self()), this.self());
 	}
 }
@@ -2,13 +2,20 @@ package de.hpi.ddm.actors;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.function.Predicate;
 
 import akka.actor.AbstractLoggingActor;
 import akka.actor.ActorRef;
+import akka.actor.Address;
 import akka.actor.PoisonPill;
 import akka.actor.Props;
 import akka.actor.Terminated;
+import de.hpi.ddm.actors.utils.Util;
+import de.hpi.ddm.singletons.ConfigurationSingleton;
 import de.hpi.ddm.structures.BloomFilter;
+import de.hpi.ddm.structures.HintDictionary;
+import de.hpi.ddm.structures.HintTable;
+import de.hpi.ddm.structures.PasswordRecord;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -20,7 +27,8 @@ public class Master extends AbstractLoggingActor {
     ////////////////////////
 
     public static final String DEFAULT_NAME = "master";
-    private static final int REQUEST_MORE_LINES_ON_BUFFER_SIZE = 10;
+    private static final double READ_AHEAD_SECONDS = 2; // The buffered lines should last this long at the rate at which they are taken.
+    private static final double RATE_SMOOTHING = 0.25; // The weight of the latest batch interval in the moving average of that rate.
 
     public static Props props(final ActorRef reader, final ActorRef collector, final BloomFilter welcomeData) {
         return Props.create(Master.class, () -> new Master(reader, collector, welcomeData));
@@ -32,6 +40,15 @@ public class Master extends AbstractLoggingActor {
         this.workers = new ArrayList<>();
         this.largeMessageProxy = this.context().actorOf(LargeMessageProxy.props(), LargeMessageProxy.DEFAULT_NAME);
         this.welcomeData = welcomeData;
+        this.welcomeDataHash = Util.hash(welcomeData);
+        this.sharedHintDictionary = ConfigurationSingleton.get().isSharedHintDictionary();
+        this.passwordRangeSize = ConfigurationSingleton.get().getPasswordRangeSize();
+        this.hintPrefixLength = ConfigurationSingleton.get().getHintPrefixLength();
+        this.hintTableDirectory = ConfigurationSingleton.get().getHintTableDirectory();
+        this.prefetchTasks = ConfigurationSingleton.get().getPrefetchTasks();
+        this.welcomeFanout = ConfigurationSingleton.get().getWelcomeFanout();
+        this.bufferSize = Math.max(1, ConfigurationSingleton.get().getBufferSize());
+        this.readAheadMemory = ConfigurationSingleton.get().getReadAheadMemory() * 1024L * 1024L;
     }
 
     ////////////////////
@@ -48,16 +65,58 @@ public class Master extends AbstractLoggingActor {
     @AllArgsConstructor
     public static class BatchMessage implements Serializable {
         private static final long serialVersionUID = 8343040942748609598L;
-        private List<String[]> lines;
+        private List<PasswordRecord> records;
     }
 
+    // The i-th password belongs to the i-th line and is null if the range did not contain it.
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
-    public static class PasswordCrackedMessage implements Serializable {
-        private static final long serialVersionUID = 8343040942748609598L;
-        private String password;
-        private int lineID;
+    public static class PasswordRangeCrackedMessage implements Serializable {
+        private static final long serialVersionUID = 2883127262935434914L;
+        private int taskID;
+        private int[] lineIDs;
+        private String[] passwords;
+        private ActorRef sender;
+    }
+
+    // Sent for every hit while a hint task is still running; the worker stays busy until its HintTaskCompletedMessage.
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class HintsCrackedMessage implements Serializable {
+        private static final long serialVersionUID = -4712335823425123567L;
+        private char hint;
+        private int[] hintEntries;
+        private ActorRef sender;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class HintTaskCompletedMessage implements Serializable {
+        private static final long serialVersionUID = 6120373287343364455L;
+        private int taskID;
+        private ActorRef sender;
+    }
+
+    // The answer to a PasswordCrackingWorker.RevokeTaskMessage; the task is only revoked if the worker had not started it yet.
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class TaskRevokedMessage implements Serializable {
+        private static final long serialVersionUID = -7969113985000846405L;
+        private int taskID;
+        private boolean revoked;
+        private ActorRef sender;
+    }
+
+    // A worker holds the welcome data, so it does not need to get the data from the master if its relay terminates.
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class WelcomeReceivedMessage implements Serializable {
+        private static final long serialVersionUID = 4518290377163059842L;
         private ActorRef sender;
     }
 
@@ -76,15 +135,166 @@ public class Master extends AbstractLoggingActor {
     private final List<ActorRef> workers;
     private final ActorRef largeMessageProxy;
     private final BloomFilter welcomeData;
-    private final LinkedList<ActorRef> idleWorkers = new LinkedList<>();
-    private final LinkedList<String[]> lines = new LinkedList<>();
-    private String passwordChars = null;
-    private int passwordLength = 0;
+    private final String welcomeDataHash; // Lets the workers of one actor system share a single copy of the welcome data.
+    // Welcome data broadcast: the first worker of each actor system relays the data to the other workers of its system
+    // and to the first workers of welcomeFanout later systems, so that the relays form a tree in the order of registration.
+    private final int welcomeFanout;
+    private final List<ActorRef> welcomeRelays = new ArrayList<>();
+    private final HashMap<Address, ActorRef> welcomeRelaysBySystem = new HashMap<>();
+    // Each worker that waits for the welcome data from a relay; it gets the data from the master if its relay terminates.
+    private final HashMap<ActorRef, ActorRef> welcomeSources = new HashMap<>();
+    private final ArrayDeque<PasswordRecord> lines = new ArrayDeque<>();
+    private final LinkedList<PasswordCrackingWorker.Task> tasks = new LinkedList<>();
     private boolean readerIsEmpty = false;
-    private final HashMap<ActorRef, PasswordCrackingWorker.TaskCrackPasswordMessage> assignedTasks = new HashMap<>();
+    // Adaptive read-ahead: at most one ReadMessage is outstanding, and the lines it requests follow the rate at which
+    // lines are taken from the buffer and the number of workers, within the memory cap.
+    private final int bufferSize;
+    private final long readAheadMemory;
+    private boolean readRequested = false;
+    private int numLinesRequested = 0;
+    private int numLinesTaken = 0; // Since the last batch arrived.
+    private long lastBatchTime;
+    private double linesPerSecond = 0;
+    private int lineSize = 0; // The estimated heap size of a buffered line, known from the first line.
+    // The tasks of each worker by their IDs in the order of assignment: the first one is running, the others are prefetched.
+    private final HashMap<ActorRef, LinkedHashMap<Integer, PasswordCrackingWorker.Task>> assignedTasks = new HashMap<>();
+    private int nextTaskID = 0;
+    private final int prefetchTasks;
+    // The prefetched tasks that are being taken back from a busy worker for an idle one, by their IDs.
+    private final HashMap<Integer, ActorRef> pendingRevocations = new HashMap<>();
+
+    // Every line that has been taken from the buffer but whose password has not been reported yet.
+    private final HashMap<Integer, PasswordSearch> passwordSearches = new HashMap<>();
+    // The same lines by the first entry of their hints; the hints of all lines are numbered consecutively.
+    private final TreeMap<Integer, PasswordSearch> searchesByFirstHintEntry = new TreeMap<>();
+    private int nextHintEntry = 0;
+    // The lines that still have hint tasks to hand out, oldest first.
+    private final LinkedList<PasswordSearch> activePasswordSearches = new LinkedList<>();
+    // Lines with the same reduced passwordChars and passwordLength are brute forced together, see PasswordGroup.
+    private final HashMap<String, PasswordGroup> passwordGroups = new HashMap<>();
+    private final LinkedList<PasswordGroup> activePasswordGroups = new LinkedList<>();
+    private final int passwordRangeSize;
+    private final int hintPrefixLength;
+    private final String hintTableDirectory;
+    private final HashMap<String, Integer> hintPrefixLengths = new HashMap<>(); // The prefix length of each alphabet's hint units.
+
+    // Shared hint dictionary mode: all lines wait in passwordSearches until the hints of all lines have been cracked together.
+    private final boolean sharedHintDictionary;
+    private HintDictionary hintDictionary = null;
+    private int numHintTasksOpen = 0;
+    private int numLinesCrackingSharedHints = 0; // Once all lines have their hints, the open hint tasks are cancelled.
 
     private long startTime;
 
+    private static class PasswordSearch {
+        private final int lineID;
+        private final String hintChars; // The full alphabet that the hints are permutations of; shared by the lines of a file.
+        private String passwordChars;
+        private final int passwordLength;
+        private final byte[] password;
+        private final byte[][] hints; // Only kept if the hints are cracked per line.
+        private final int numHints;
+        private final int firstHintEntry;
+        private final BitSet crackedHints = new BitSet();
+        private int numHintsCracked = 0;
+
+        // Cursor over the (missing character, prefix) units of the hint permutations; only used without a shared dictionary.
+        private int nextMissingCharIndex = 0;
+        private int nextPrefixIndex = 0;
+        private int numHintUnitsOpen = 0;
+
+        private long numCombinations = -1; // Unknown until the hints are cracked.
+        private long numCombinationsLeft = 0; // The combinations that have not been handed out for this line yet.
+        private int numRangesOpen = 0;
+        private boolean active = false;
+
+        private PasswordSearch(PasswordRecord record, int firstHintEntry, boolean withHints) {
+            this.lineID = record.getLineID();
+            this.hintChars = record.getPasswordChars();
+            this.passwordChars = record.getPasswordChars();
+            this.passwordLength = record.getPasswordLength();
+            this.password = record.getPasswordDigest();
+            this.hints = withHints ? record.getHintDigests() : null;
+            this.numHints = record.getHintDigests().length;
+            this.firstHintEntry = firstHintEntry;
+        }
+
+        private boolean isCrackingHints() {
+            return this.numCombinations < 0;
+        }
+
+        private boolean hasNextHintUnit() {
+            if (this.hints == null || !this.isCrackingHints()) {
+                return false;
+            }
+            // A line has one hint per missing character, so a missing character whose hint is cracked needs no more units.
+            while (this.nextMissingCharIndex < this.hintChars.length()
+                    && this.passwordChars.indexOf(this.hintChars.charAt(this.nextMissingCharIndex)) < 0) {
+                this.nextMissingCharIndex++;
+                this.nextPrefixIndex = 0;
+            }
+            return this.nextMissingCharIndex < this.hintChars.length();
+        }
+
+        private PasswordCrackingWorker.TaskCrackHintsMessage nextHintUnit(int prefixLength) {
+            String branchChars = Util.removeChars(this.hintChars, this.hintChars.substring(this.nextMissingCharIndex, this.nextMissingCharIndex + 1));
+            PasswordCrackingWorker.TaskCrackHintsMessage unit = new PasswordCrackingWorker.TaskCrackHintsMessage(this.hintChars, this.nextMissingCharIndex,
+                    Util.permutationPrefix(branchChars, prefixLength, this.nextPrefixIndex), this.firstHintEntry, this.hints);
+            this.nextPrefixIndex++;
+            if (this.nextPrefixIndex == Util.numPermutationPrefixes(branchChars.length(), prefixLength)) {
+                this.nextMissingCharIndex++;
+                this.nextPrefixIndex = 0;
+            }
+            this.numHintUnitsOpen++;
+            return unit;
+        }
+    }
+
+    // The password space of all lines with the same reduced passwordChars and passwordLength. It is enumerated in ranges
+    // that test the passwords of all lines at once; lines that join later continue with the next range and wrap around
+    // until they have seen every combination once.
+    private static class PasswordGroup {
+        private final String key;
+        private final String passwordChars;
+        private final int passwordLength;
+        private final long numCombinations;
+        private long nextRangeStart = 0;
+        private final LinkedList<PasswordSearch> passwordSearches = new LinkedList<>(); // The lines with combinations left.
+
+        private PasswordGroup(String key, String passwordChars, int passwordLength, long numCombinations) {
+            this.key = key;
+            this.passwordChars = passwordChars;
+            this.passwordLength = passwordLength;
+            this.numCombinations = numCombinations;
+        }
+
+        private boolean hasNextRange() {
+            return !this.passwordSearches.isEmpty();
+        }
+
+        private PasswordCrackingWorker.TaskCrackPasswordRangeMessage nextRange(int rangeSize) {
+            long rangeLength = Math.min(rangeSize, this.numCombinations - this.nextRangeStart);
+            int[] lineIDs = new int[this.passwordSearches.size()];
+            byte[][] passwords = new byte[this.passwordSearches.size()][];
+            int i = 0;
+            Iterator<PasswordSearch> iterator = this.passwordSearches.iterator();
+            while (iterator.hasNext()) {
+                PasswordSearch passwordSearch = iterator.next();
+                lineIDs[i] = passwordSearch.lineID;
+                passwords[i++] = passwordSearch.password;
+                passwordSearch.numCombinationsLeft -= Math.min(rangeLength, passwordSearch.numCombinationsLeft);
+                passwordSearch.numRangesOpen++;
+                if (passwordSearch.numCombinationsLeft == 0) {
+                    iterator.remove();
+                }
+            }
+            PasswordCrackingWorker.TaskCrackPasswordRangeMessage range = new PasswordCrackingWorker.TaskCrackPasswordRangeMessage(
+                    lineIDs, this.passwordChars, this.passwordLength, passwords, this.nextRangeStart, this.nextRangeStart + rangeLength);
+            this.nextRangeStart = (this.nextRangeStart + rangeLength) % this.numCombinations;
+            return range;
+        }
+    }
+
     /////////////////////
     // Actor Lifecycle //
     /////////////////////
@@ -103,46 +313,217 @@ public class Master extends AbstractLoggingActor {
         return receiveBuilder()
                 .match(StartMessage.class, this::handle)
                 .match(BatchMessage.class, this::handle)
-                .match(PasswordCrackedMessage.class, this::handle)
+                .match(HintsCrackedMessage.class, this::handle)
+                .match(HintTaskCompletedMessage.class, this::handle)
+                .match(TaskRevokedMessage.class, this::handle)
+                .match(PasswordRangeCrackedMessage.class, this::handle)
                 .match(Terminated.class, this::handle)
                 .match(RegistrationMessage.class, this::handle)
+                .match(WelcomeReceivedMessage.class, this::handle)
                 .matchAny(object -> this.log().info("Received unknown message: \"{}\"", object.toString()))
                 .build();
     }
 
     protected void handle(StartMessage message) {
         this.startTime = System.currentTimeMillis();
+        this.lastBatchTime = System.nanoTime();
         started = true;
-        this.reader.tell(new Reader.ReadMessage(), this.self());
-        assignTasksToIdleWorkers();
+        assignTasks();
     }
 
-    protected void assignTasksToIdleWorkers() {
+    // Keeps every worker busy with one running and prefetchTasks prefetched tasks, so that a worker never waits for
+    // the Master between two tasks; the completion of a task is the worker's request for the next one.
+    protected void assignTasks() {
         if (!started) {
             return;
         }
-        int removedWorker = 0;
-        for (ActorRef idleWorker : idleWorkers) {
-            String[] line;
-            if ((line = lines.poll()) == null) {
-                break;
+        // Each worker gets its first task before any worker gets a prefetched one.
+        assignment:
+        for (int numTasks = 0; numTasks <= prefetchTasks; numTasks++) {
+            for (ActorRef worker : workers) {
+                if (assignedTasks.get(worker).size() > numTasks) {
+                    continue;
+                }
+                PasswordCrackingWorker.Task newTask = nextTask();
+                if (newTask == null) {
+                    stealTasks();
+                    break assignment;
+                }
+                int taskID = nextTaskID++;
+                assignedTasks.get(worker).put(taskID, newTask);
+                this.largeMessageProxy.tell(new LargeMessageProxy.LargeMessage<>(new PasswordCrackingWorker.AssignTaskMessage(taskID, newTask), worker), this.self());
             }
-            removedWorker++;
-            PasswordCrackingWorker.TaskCrackPasswordMessage newTask = new PasswordCrackingWorker.TaskCrackPasswordMessage(Integer.parseInt(line[0]), passwordChars, passwordLength, line[3], Arrays.copyOfRange(line, 4, line.length));
-            this.largeMessageProxy.tell(new LargeMessageProxy.LargeMessage<>(newTask, idleWorker), this.self());
-            assignedTasks.put(idleWorker, newTask);
         }
-        for (int i = 0; i < removedWorker; i++) {
-            idleWorkers.poll();
+        requestLines();
+        if (readerIsEmpty && started && lines.size() == 0 && tasks.isEmpty() && passwordSearches.isEmpty() && numAssignedTasks() == 0) {
+            this.terminate();
         }
-        if (!readerIsEmpty && lines.size() <= REQUEST_MORE_LINES_ON_BUFFER_SIZE) {
-            this.reader.tell(new Reader.ReadMessage(), this.self());
+    }
+
+    private void requestLines() {
+        if (readerIsEmpty || readRequested) {
+            return;
         }
-        if (readerIsEmpty && idleWorkers.size() == workers.size() && started && lines.size() == 0) {
-            this.terminate();
+        int readAheadTarget = readAheadTarget(bufferSize, workers.size(), prefetchTasks, linesPerSecond, readAheadMemory, lineSize);
+        // Without a shared dictionary, the next batch is requested once half of the buffered lines are taken.
+        if (!sharedHintDictionary && lines.size() > readAheadTarget / 2) {
+            return;
+        }
+        numLinesRequested = sharedHintDictionary ? readAheadTarget : readAheadTarget - lines.size();
+        readRequested = true;
+        this.reader.tell(new Reader.ReadMessage(numLinesRequested), this.self());
+    }
+
+    // Enough lines for a task per worker and for READ_AHEAD_SECONDS at the observed rate as far as readAheadMemory allows,
+    // but at least one batch of bufferSize lines.
+    static int readAheadTarget(int bufferSize, int numWorkers, int prefetchTasks, double linesPerSecond, long readAheadMemory, int lineSize) {
+        long readAheadTarget = Math.max(numWorkers * (prefetchTasks + 1L), (long) (linesPerSecond * READ_AHEAD_SECONDS));
+        if (lineSize > 0) {
+            readAheadTarget = Math.min(readAheadTarget, readAheadMemory / lineSize);
+        }
+        return (int) Math.min(Math.max(bufferSize, readAheadTarget), Integer.MAX_VALUE);
+    }
+
+    // An exponentially weighted moving average of the rate at which lines are taken; the first batch interval starts it.
+    static double smoothedRate(double smoothedRate, double rate) {
+        return smoothedRate == 0 ? rate : RATE_SMOOTHING * rate + (1 - RATE_SMOOTHING) * smoothedRate;
+    }
+
+    private int numAssignedTasks() {
+        int numAssignedTasks = 0;
+        for (LinkedHashMap<Integer, PasswordCrackingWorker.Task> workerTasks : assignedTasks.values()) {
+            numAssignedTasks += workerTasks.size();
+        }
+        return numAssignedTasks;
+    }
+
+    // There is no task left to hand out, so idle workers take the last prefetched task of the busiest workers.
+    private void stealTasks() {
+        for (ActorRef thief : workers) {
+            if (!assignedTasks.get(thief).isEmpty()) {
+                continue;
+            }
+            ActorRef victim = null;
+            int victimTaskID = -1;
+            int maxNumPrefetchedTasks = 0;
+            for (ActorRef worker : workers) {
+                int numPrefetchedTasks = assignedTasks.get(worker).size() - 1;
+                int lastTaskID = -1;
+                for (int taskID : assignedTasks.get(worker).keySet()) {
+                    if (pendingRevocations.containsKey(taskID)) {
+                        numPrefetchedTasks--;
+                    } else {
+                        lastTaskID = taskID;
+                    }
+                }
+                if (numPrefetchedTasks > maxNumPrefetchedTasks) {
+                    victim = worker;
+                    victimTaskID = lastTaskID;
+                    maxNumPrefetchedTasks = numPrefetchedTasks;
+                }
+            }
+            if (victim == null) {
+                return;
+            }
+            pendingRevocations.put(victimTaskID, victim);
+            victim.tell(new PasswordCrackingWorker.RevokeTaskMessage(victimTaskID), this.self());
+        }
+    }
+
+    private PasswordCrackingWorker.Task completeTask(ActorRef worker, int taskID) {
+        LinkedHashMap<Integer, PasswordCrackingWorker.Task> workerTasks = assignedTasks.get(worker);
+        return workerTasks == null ? null : workerTasks.remove(taskID);
+    }
+
+    private PasswordCrackingWorker.Task nextTask() {
+        if (!tasks.isEmpty()) {
+            return tasks.poll();
+        }
+        while (true) {
+            // Finish the lines that are already being cracked before starting new ones.
+            while (!activePasswordGroups.isEmpty()) {
+                PasswordGroup passwordGroup = activePasswordGroups.peek();
+                if (passwordGroup.hasNextRange()) {
+                    return passwordGroup.nextRange(passwordRangeSize);
+                }
+                activePasswordGroups.poll();
+                passwordGroups.remove(passwordGroup.key);
+            }
+            while (!activePasswordSearches.isEmpty()) {
+                PasswordSearch passwordSearch = activePasswordSearches.peek();
+                if (passwordSearch.hasNextHintUnit()) {
+                    return passwordSearch.nextHintUnit(hintPrefixLength(passwordSearch.hintChars));
+                }
+                activePasswordSearches.poll();
+                passwordSearch.active = false;
+            }
+            if (sharedHintDictionary) {
+                // The lines are only released into the dictionary once all of them have been read.
+                return null;
+            }
+            PasswordRecord line = lines.poll();
+            if (line == null) {
+                return null;
+            }
+            numLinesTaken++;
+            PasswordSearch passwordSearch = addPasswordSearch(line, true);
+            if (passwordSearch.numHints == 0) {
+                startPasswordRanges(passwordSearch);
+            } else {
+                activatePasswordSearch(passwordSearch);
+            }
+        }
+    }
+
+    private PasswordSearch addPasswordSearch(PasswordRecord line, boolean withHints) {
+        PasswordSearch passwordSearch = new PasswordSearch(line, nextHintEntry, withHints);
+        nextHintEntry += passwordSearch.numHints;
+        passwordSearches.put(passwordSearch.lineID, passwordSearch);
+        searchesByFirstHintEntry.put(passwordSearch.firstHintEntry, passwordSearch);
+        return passwordSearch;
+    }
+
+    private void removePasswordSearch(PasswordSearch passwordSearch) {
+        passwordSearches.remove(passwordSearch.lineID);
+        searchesByFirstHintEntry.remove(passwordSearch.firstHintEntry, passwordSearch);
+        if (passwordSearch.numCombinationsLeft > 0) {
+            passwordGroups.get(passwordGroupKey(passwordSearch)).passwordSearches.remove(passwordSearch);
+        }
+    }
+
+    private static String passwordGroupKey(PasswordSearch passwordSearch) {
+        return passwordSearch.passwordLength + ":" + passwordSearch.passwordChars;
+    }
+
+    private void activatePasswordSearch(PasswordSearch passwordSearch) {
+        if (!passwordSearch.active) {
+            passwordSearch.active = true;
+            activePasswordSearches.add(passwordSearch);
         }
     }
 
+    private void startPasswordRanges(PasswordSearch passwordSearch) {
+        // Sorting makes lines whose hints removed the same characters share one enumeration.
+        char[] passwordChars = passwordSearch.passwordChars.toCharArray();
+        Arrays.sort(passwordChars);
+        passwordSearch.passwordChars = new String(passwordChars);
+        passwordSearch.numCombinations = Util.numCombinations(passwordSearch.passwordChars.length(), passwordSearch.passwordLength);
+        if (passwordSearch.numCombinations == 0) {
+            this.log().error("Could not crack password: " + Util.encodeHex(passwordSearch.password) + "!");
+            removePasswordSearch(passwordSearch);
+            return;
+        }
+        String key = passwordGroupKey(passwordSearch);
+        PasswordGroup passwordGroup = passwordGroups.get(key);
+        if (passwordGroup == null) {
+            passwordGroup = new PasswordGroup(key, passwordSearch.passwordChars, passwordSearch.passwordLength, passwordSearch.numCombinations);
+            passwordGroups.put(key, passwordGroup);
+            activePasswordGroups.add(passwordGroup);
+        }
+        passwordSearch.numCombinationsLeft = passwordSearch.numCombinations;
+        passwordGroup.passwordSearches.add(passwordSearch);
+    }
+
     protected void handle(BatchMessage message) {
 
         // - The Master received the first batch of input records.
@@ -158,22 +539,77 @@ public class Master extends AbstractLoggingActor {
         // b) Memory reduction: If the batches are processed sequentially, the memory consumption can be kept constant; if the entire input is read into main memory, the memory consumption scales at least linearly with the input size.
         // - It is your choice, how and if you want to make use of the batched inputs. Simply aggregate all batches in the Master and start the processing afterwards, if you wish.
 
-        if (message.getLines().isEmpty()) {
+        // The reader sends fewer lines than requested only once it has reached the end of the file.
+        readRequested = false;
+        if (message.getRecords().size() < numLinesRequested) {
             readerIsEmpty = true;
         }
+        long now = System.nanoTime();
+        this.linesPerSecond = smoothedRate(this.linesPerSecond, numLinesTaken / Math.max(1e-3, (now - lastBatchTime) / 1e9));
+        lastBatchTime = now;
+        numLinesTaken = 0;
+        if (lineSize == 0 && !message.getRecords().isEmpty()) {
+            lineSize = message.getRecords().get(0).estimatedSize();
+        }
+
+        // Add lines to buffer; the Reader has already dropped their names.
+        lines.addAll(message.getRecords());
+
+        if (sharedHintDictionary && readerIsEmpty && hintDictionary == null) {
+            createHintDictionary();
+        }
+        assignTasks();
+    }
+
+    // Collects the hints of all buffered lines into one dictionary and schedules one task per missing character and prefix,
+    // so that each permutation is hashed once for the whole dataset instead of once per line.
+    private void createHintDictionary() {
+        List<byte[]> hintDigests = new ArrayList<>();
+        Set<String> allPasswordChars = new LinkedHashSet<>();
+        for (PasswordRecord line : lines) {
+            PasswordSearch passwordSearch = addPasswordSearch(line, false);
+            hintDigests.addAll(Arrays.asList(line.getHintDigests()));
+            if (passwordSearch.numHints == 0) {
+                startPasswordRanges(passwordSearch);
+            } else {
+                numLinesCrackingSharedHints++;
+                allPasswordChars.add(passwordSearch.passwordChars);
+            }
+        }
+        lines.clear();
+
+        hintDictionary = new HintDictionary(hintDigests.toArray(new byte[0][]));
+        this.log().info("Created hint dictionary with {} hints of {} lines.", hintDictionary.size(), passwordSearches.size());
 
-        // Add lines to buffer.
-        for (String[] line : message.getLines()) {
-            if (passwordChars == null) {
-                passwordChars = line[2];
-                passwordLength = Integer.parseInt(line[3]);
+        for (ActorRef worker : workers) {
+            sendHintDictionary(worker);
+        }
+        for (String chars : allPasswordChars) {
+            int prefixLength = hintPrefixLength(chars);
+            for (int i = 0; i < chars.length(); i++) {
+                String branchChars = Util.removeChars(chars, chars.substring(i, i + 1));
+                int numPrefixes = Util.numPermutationPrefixes(branchChars.length(), prefixLength);
+                for (int prefixIndex = 0; prefixIndex < numPrefixes; prefixIndex++) {
+                    tasks.add(new PasswordCrackingWorker.TaskCrackHintsMessage(chars, i, Util.permutationPrefix(branchChars, prefixLength, prefixIndex), 0, null));
+                    numHintTasksOpen++;
+                }
             }
-            String [] lineWithoutName = new String[line.length - 1];
-            lineWithoutName[0] = line[0];
-            if (line.length - 2 >= 0) System.arraycopy(line, 2, lineWithoutName, 1, line.length - 2);
-            lines.add(lineWithoutName);
         }
-        assignTasksToIdleWorkers();
+    }
+
+    // A lookup in a precomputed hint table resolves all hints of a missing character at once, while every further prefix
+    // of that character would only repeat the lookups. Master and workers share the table directory, so its table decides.
+    private int hintPrefixLength(String hintChars) {
+        return hintPrefixLengths.computeIfAbsent(hintChars, chars -> {
+            if (!hintTableDirectory.isEmpty() && HintTable.file(hintTableDirectory, chars).isFile()) {
+                return 0;
+            }
+            return Math.max(0, Math.min(hintPrefixLength, chars.length() - 1));
+        });
+    }
+
+    private void sendHintDictionary(ActorRef worker) {
+        this.largeMessageProxy.tell(new LargeMessageProxy.LargeMessage<>(new PasswordCrackingWorker.HintDictionaryMessage(hintDictionary), worker), this.self());
     }
 
     protected void terminate() {
@@ -196,39 +632,271 @@ public class Master extends AbstractLoggingActor {
     protected void handle(RegistrationMessage message) {
         this.context().watch(this.sender());
         this.workers.add(this.sender());
-        this.idleWorkers.add(this.sender());
+        this.assignedTasks.put(this.sender(), new LinkedHashMap<>());
         this.log().info("Registered {}", this.sender());
 
-        this.largeMessageProxy.tell(new LargeMessageProxy.LargeMessage<>(new PasswordCrackingWorker.WelcomeMessage(this.welcomeData, this.self()), this.sender()), this.self());
-        assignTasksToIdleWorkers();
+        this.welcome(this.sender());
+        if (hintDictionary != null) {
+            sendHintDictionary(this.sender());
+        }
+        assignTasks();
+    }
+
+    private void welcome(ActorRef worker) {
+        ActorRef relay = null;
+        if (this.welcomeFanout > 0) {
+            Address system = worker.path().address();
+            relay = this.welcomeRelaysBySystem.get(system);
+            if (relay == null) {
+                // The relays are numbered like the nodes of a complete tree, so its depth grows logarithmically with the number of systems.
+                int position = this.welcomeRelays.size();
+                if (position > 0)
+                    relay = this.welcomeRelays.get((position - 1) / this.welcomeFanout);
+                this.welcomeRelays.add(worker);
+                this.welcomeRelaysBySystem.put(system, worker);
+            }
+        }
+        if (relay == null) {
+            this.largeMessageProxy.tell(new LargeMessageProxy.LargeMessage<>(new PasswordCrackingWorker.WelcomeMessage(this.welcomeData, this.welcomeDataHash, this.self()), worker), this.self());
+            return;
+        }
+        this.welcomeSources.put(worker, relay);
+        relay.tell(new PasswordCrackingWorker.RelayWelcomeMessage(worker), this.self());
+    }
+
+    protected void handle(WelcomeReceivedMessage message) {
+        this.welcomeSources.remove(message.getSender());
+    }
+
+    private void unregisterWelcomeRelay(ActorRef worker, boolean systemTerminated) {
+        this.welcomeSources.remove(worker);
+        if (this.welcomeRelaysBySystem.remove(worker.path().address(), worker)) {
+            this.welcomeRelays.remove(worker);
+            // The relay may have terminated before it got or relayed the data; sending the data twice does no harm.
+            List<ActorRef> orphans = new ArrayList<>();
+            this.welcomeSources.forEach((receiver, relay) -> {
+                if (relay.equals(worker))
+                    orphans.add(receiver);
+            });
+            for (ActorRef orphan : orphans) {
+                this.welcomeSources.remove(orphan);
+                // The workers of a terminated system are gone as well; their own Terminated messages are still on the way.
+                if (systemTerminated && orphan.path().address().equals(worker.path().address()))
+                    continue;
+                this.largeMessageProxy.tell(new LargeMessageProxy.LargeMessage<>(new PasswordCrackingWorker.WelcomeMessage(this.welcomeData, this.welcomeDataHash, this.self()), orphan), this.self());
+            }
+        }
     }
 
     protected void handle(Terminated message) {
         this.context().unwatch(message.getActor());
         if (this.workers.contains(message.getActor())) {
             this.workers.remove(message.getActor());
-            this.idleWorkers.remove(message.getActor());
-            PasswordCrackingWorker.TaskCrackPasswordMessage failedTask = this.assignedTasks.remove(message.getActor());
-            if (failedTask != null) {
-                ArrayList<String> originalLine = new ArrayList<>();
-                originalLine.add("" + failedTask.getLineID());
-                originalLine.add(passwordChars);
-                originalLine.add("" + passwordLength);
-                originalLine.add(failedTask.getPassword());
-                originalLine.addAll(Arrays.asList(failedTask.getHints()));
-                this.lines.add(originalLine.toArray(new String[0]));
-                this.log().info("rescheduling line: " + failedTask.getLineID());
-                assignTasksToIdleWorkers();
+            this.unregisterWelcomeRelay(message.getActor(), message.addressTerminated());
+            LinkedHashMap<Integer, PasswordCrackingWorker.Task> failedTasks = this.assignedTasks.remove(message.getActor());
+            if (!failedTasks.isEmpty()) {
+                this.pendingRevocations.keySet().removeAll(failedTasks.keySet());
+                List<PasswordCrackingWorker.Task> failedTaskList = new ArrayList<>(failedTasks.values());
+                for (int i = failedTaskList.size() - 1; i >= 0; i--) {
+                    this.rescheduleTask(failedTaskList.get(i));
+                }
+                this.log().info("Rescheduling {} tasks of {}", failedTasks.size(), message.getActor());
+                assignTasks();
             }
             this.log().info("Unregistered {}", message.getActor());
         }
     }
 
-    protected void handle(PasswordCrackedMessage message) {
-        this.log().info("Received cracked password: " + message.password + " line: " + message.lineID);
-        this.collector.tell(new Collector.CollectMessage(message.getPassword(), message.getLineID()), this.self());
-        assignedTasks.remove(message.getSender());
-        idleWorkers.add(message.getSender());
-        assignTasksToIdleWorkers();
+    protected void handle(HintsCrackedMessage message) {
+        for (int hintEntry : message.getHintEntries()) {
+            Map.Entry<Integer, PasswordSearch> firstHintEntry = searchesByFirstHintEntry.floorEntry(hintEntry);
+            if (firstHintEntry == null) {
+                continue;
+            }
+            PasswordSearch passwordSearch = firstHintEntry.getValue();
+            int hintIndex = hintEntry - passwordSearch.firstHintEntry;
+            // Rescheduled tasks report their hints again.
+            if (hintIndex >= passwordSearch.numHints || !passwordSearch.isCrackingHints() || passwordSearch.crackedHints.get(hintIndex)) {
+                continue;
+            }
+            passwordSearch.crackedHints.set(hintIndex);
+            passwordSearch.passwordChars = passwordSearch.passwordChars.replace("" + message.getHint(), "");
+            passwordSearch.numHintsCracked++;
+            boolean allHintsCracked = passwordSearch.numHintsCracked == passwordSearch.numHints;
+            if (allHintsCracked) {
+                startPasswordRanges(passwordSearch);
+            }
+            if (passwordSearch.hints != null) {
+                // The other units of the missing character, or of all characters once the line has all its hints, cannot find anything.
+                cancelHintTasks(passwordSearch.firstHintEntry, allHintsCracked
+                        ? PasswordCrackingWorker.ALL_MISSING_CHARS : passwordSearch.hintChars.indexOf(message.getHint()));
+            } else if (allHintsCracked && --numLinesCrackingSharedHints == 0 && numHintTasksOpen > 0) {
+                cancelHintTasks(0, PasswordCrackingWorker.ALL_MISSING_CHARS);
+            }
+        }
+        assignTasks();
+    }
+
+    protected void handle(HintTaskCompletedMessage message) {
+        PasswordCrackingWorker.Task task = completeTask(message.getSender(), message.getTaskID());
+        if (task instanceof PasswordCrackingWorker.TaskCrackHintsMessage) {
+            completeHintTask((PasswordCrackingWorker.TaskCrackHintsMessage) task);
+        }
+        assignTasks();
+    }
+
+    private void completeHintTask(PasswordCrackingWorker.TaskCrackHintsMessage hintTask) {
+        if (hintTask.getHints() == null) {
+            numHintTasksOpen--;
+            if (numHintTasksOpen == 0) {
+                // Brute force the remaining lines anyway; their password alphabets are just not fully reduced.
+                for (PasswordSearch passwordSearch : new ArrayList<>(passwordSearches.values())) {
+                    if (passwordSearch.isCrackingHints()) {
+                        this.log().error("Could not crack all hints of line {}!", passwordSearch.lineID);
+                        startPasswordRanges(passwordSearch);
+                    }
+                }
+            }
+        } else {
+            PasswordSearch passwordSearch = searchesByFirstHintEntry.get(hintTask.getFirstHintEntry());
+            if (passwordSearch != null) {
+                passwordSearch.numHintUnitsOpen--;
+                if (passwordSearch.isCrackingHints() && passwordSearch.numHintUnitsOpen == 0 && !passwordSearch.hasNextHintUnit()) {
+                    this.log().error("Could not crack all hints of line {}!", passwordSearch.lineID);
+                    startPasswordRanges(passwordSearch);
+                }
+            }
+        }
+    }
+
+    protected void handle(TaskRevokedMessage message) {
+        pendingRevocations.remove(message.getTaskID());
+        if (message.isRevoked()) {
+            PasswordCrackingWorker.Task task = completeTask(message.getSender(), message.getTaskID());
+            if (task != null) {
+                rescheduleTask(task);
+            }
+        }
+        assignTasks();
+    }
+
+    // Puts a task that a worker gave back at the front of the queue. A cancellation may have missed the task while it
+    // was on its way back, so the parts whose targets have been found meanwhile are dropped first.
+    private void rescheduleTask(PasswordCrackingWorker.Task task) {
+        if (task instanceof PasswordCrackingWorker.TaskCrackHintsMessage) {
+            PasswordCrackingWorker.TaskCrackHintsMessage hintTask = (PasswordCrackingWorker.TaskCrackHintsMessage) task;
+            if (isObsoleteHintTask(hintTask)) {
+                completeHintTask(hintTask);
+                return;
+            }
+        } else if (task instanceof PasswordCrackingWorker.TaskCrackPasswordRangeMessage) {
+            task = withoutEndedSearches((PasswordCrackingWorker.TaskCrackPasswordRangeMessage) task);
+            if (task == null) {
+                return;
+            }
+        }
+        tasks.addFirst(task);
+    }
+
+    // A hint task is obsolete once its line has all hints or the hint of its missing character, or, with a shared
+    // dictionary, once all lines have their hints.
+    private boolean isObsoleteHintTask(PasswordCrackingWorker.TaskCrackHintsMessage hintTask) {
+        if (hintTask.getHints() == null) {
+            return numLinesCrackingSharedHints == 0;
+        }
+        PasswordSearch passwordSearch = searchesByFirstHintEntry.get(hintTask.getFirstHintEntry());
+        return passwordSearch == null || !passwordSearch.isCrackingHints()
+                || passwordSearch.passwordChars.indexOf(passwordSearch.hintChars.charAt(hintTask.getMissingCharIndex())) < 0;
+    }
+
+    // The range without the lines whose password search has ended, or null if no line is left.
+    private PasswordCrackingWorker.TaskCrackPasswordRangeMessage withoutEndedSearches(PasswordCrackingWorker.TaskCrackPasswordRangeMessage range) {
+        int numLines = 0;
+        for (int lineID : range.getLineIDs()) {
+            if (passwordSearches.containsKey(lineID)) {
+                numLines++;
+            }
+        }
+        if (numLines == range.getLineIDs().length) {
+            return range;
+        }
+        if (numLines == 0) {
+            return null;
+        }
+        int[] lineIDs = new int[numLines];
+        byte[][] passwords = new byte[numLines][];
+        for (int i = 0, j = 0; i < range.getLineIDs().length; i++) {
+            if (passwordSearches.containsKey(range.getLineIDs()[i])) {
+                lineIDs[j] = range.getLineIDs()[i];
+                passwords[j++] = range.getPasswords()[i];
+            }
+        }
+        return new PasswordCrackingWorker.TaskCrackPasswordRangeMessage(lineIDs, range.getPasswordChars(), range.getPasswordLength(),
+                passwords, range.getRangeStart(), range.getRangeEnd());
+    }
+
+    protected void handle(PasswordRangeCrackedMessage message) {
+        for (int i = 0; i < message.getLineIDs().length; i++) {
+            // Lines that are cracked already have been removed.
+            PasswordSearch passwordSearch = passwordSearches.get(message.getLineIDs()[i]);
+            if (passwordSearch == null) {
+                continue;
+            }
+            passwordSearch.numRangesOpen--;
+            if (message.getPasswords()[i] != null) {
+                this.log().info("Received cracked password: " + message.getPasswords()[i] + " line: " + passwordSearch.lineID);
+                this.collector.tell(new Collector.CollectMessage(message.getPasswords()[i], passwordSearch.lineID), this.self());
+                removePasswordSearch(passwordSearch);
+                this.cancelPasswordRanges(passwordSearch);
+            } else if (passwordSearch.numRangesOpen == 0 && passwordSearch.numCombinationsLeft == 0) {
+                this.log().error("Could not crack password: " + Util.encodeHex(passwordSearch.password) + "!");
+                removePasswordSearch(passwordSearch);
+            }
+        }
+        completeTask(message.getSender(), message.getTaskID());
+        assignTasks();
+    }
+
+    // Stops the hint tasks of the line with the given first hint entry that test the given missing character, or all of its
+    // tasks: those in the queue are dropped, and the workers drop or stop theirs and report them as completed.
+    private void cancelHintTasks(int firstHintEntry, int missingCharIndex) {
+        PasswordCrackingWorker.CancelHintsMessage cancelMessage = new PasswordCrackingWorker.CancelHintsMessage(firstHintEntry, missingCharIndex, null);
+        List<PasswordCrackingWorker.Task> cancelledTasks = new ArrayList<>();
+        tasks.removeIf(task -> cancelMessage.cancels(task) && cancelledTasks.add(task));
+        for (PasswordCrackingWorker.Task task : cancelledTasks) {
+            completeHintTask((PasswordCrackingWorker.TaskCrackHintsMessage) task);
+        }
+        for (Map.Entry<ActorRef, LinkedHashMap<Integer, PasswordCrackingWorker.Task>> workerTasks : assignedTasks.entrySet()) {
+            int[] taskIDs = taskIDsOf(workerTasks.getValue(), cancelMessage::cancels);
+            if (taskIDs.length > 0) {
+                workerTasks.getKey().tell(new PasswordCrackingWorker.CancelHintsMessage(firstHintEntry, missingCharIndex, taskIDs), this.self());
+            }
+        }
+    }
+
+    // Stops the workers that are testing or will test other ranges for the line.
+    private void cancelPasswordRanges(PasswordSearch passwordSearch) {
+        for (Map.Entry<ActorRef, LinkedHashMap<Integer, PasswordCrackingWorker.Task>> workerTasks : assignedTasks.entrySet()) {
+            int[] taskIDs = taskIDsOf(workerTasks.getValue(), task -> isRangeOf(task, passwordSearch.lineID));
+            if (taskIDs.length > 0) {
+                workerTasks.getKey().tell(new PasswordCrackingWorker.CancelCrackingMessage(passwordSearch.lineID, taskIDs), this.self());
+            }
+        }
+    }
+
+    // The cancellations name the tasks they stop, so that a worker knows when it has seen all of them.
+    private static int[] taskIDsOf(LinkedHashMap<Integer, PasswordCrackingWorker.Task> workerTasks, Predicate<PasswordCrackingWorker.Task> filter) {
+        return workerTasks.entrySet().stream().filter(task -> filter.test(task.getValue())).mapToInt(Map.Entry::getKey).toArray();
+    }
+
+    private static boolean isRangeOf(PasswordCrackingWorker.Task task, int lineID) {
+        if (task instanceof PasswordCrackingWorker.TaskCrackPasswordRangeMessage) {
+            for (int rangeLineID : ((PasswordCrackingWorker.TaskCrackPasswordRangeMessage) task).getLineIDs()) {
+                if (rangeLineID == lineID) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 }
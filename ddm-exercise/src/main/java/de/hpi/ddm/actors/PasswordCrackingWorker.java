@@ -5,21 +5,33 @@ import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
-import java.time.Instant;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import akka.actor.*;
 import akka.cluster.Cluster;
 import akka.cluster.ClusterEvent.CurrentClusterState;
 import akka.cluster.ClusterEvent.MemberRemoved;
 import akka.cluster.ClusterEvent.MemberUp;
+import akka.dispatch.MessageDispatcher;
+import akka.pattern.Patterns;
 import akka.util.Timeout;
 import de.hpi.ddm.structures.BloomFilter;
+import de.hpi.ddm.singletons.ConfigurationSingleton;
+import de.hpi.ddm.singletons.WelcomeDataCache;
+import de.hpi.ddm.structures.HintDictionary;
 import de.hpi.ddm.systems.MasterSystem;
-import de.hpi.ddm.actors.utils.Util;
+import de.hpi.ddm.actors.utils.CancellationToken;
+import de.hpi.ddm.actors.utils.CandidateHasher;
+import de.hpi.ddm.actors.utils.SliceTimer;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -33,7 +45,11 @@ public class PasswordCrackingWorker extends AbstractLoggingActor {
     ////////////////////////
 
     public static final String DEFAULT_NAME = "worker";
+    public static final String CRACKING_DISPATCHER = "cracking-dispatcher";
+    public static final int NO_TASK_ID = -1; // For tasks that are sent without an AssignTaskMessage.
+    public static final int ALL_MISSING_CHARS = -1; // Cancels the hint tasks of every missing character.
     private static final int calculationDuration = 1; // 1 second.
+    private static final int numFinishedTaskIDsToRemember = 1024; // Far more than the Master's window of tasks per worker.
 
     public static Props props() {
         return Props.create(PasswordCrackingWorker.class);
@@ -43,22 +59,103 @@ public class PasswordCrackingWorker extends AbstractLoggingActor {
         this.cluster = Cluster.get(this.context().system());
         // TODO: create unique proxy (= with unique name) for each worker
         this.largeMessageProxy = this.context().actorOf(LargeMessageProxy.props(), LargeMessageProxy.DEFAULT_NAME);
+        this.crackingDispatcher = ConfigurationSingleton.get().isOffloadCracking() ? this.context().system().dispatchers().lookup(CRACKING_DISPATCHER) : null;
     }
 
     ////////////////////
     // Actor Messages //
     ////////////////////
 
+    // A unit of work that the Master assigns to a worker.
+    public interface Task extends Serializable {
+    }
+
+    // The worker queues its tasks and reports each one's completion with its taskID.
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
-    public static class TaskCrackPasswordMessage implements Serializable {
-        private static final long serialVersionUID = 100000000000000L;
-        private int lineID;
+    public static class AssignTaskMessage implements Serializable {
+        private static final long serialVersionUID = 3526924617830917541L;
+        private int taskID;
+        private Task task;
+    }
+
+    // Takes a queued task back from this worker; answered with a Master.TaskRevokedMessage.
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RevokeTaskMessage implements Serializable {
+        private static final long serialVersionUID = -1240236466950263532L;
+        private int taskID;
+    }
+
+    // Tests the combinations with the indices rangeStart (inclusive) to rangeEnd (exclusive), see Util.numCombinations(),
+    // against the password digests of all given lines; the lines share their reduced passwordChars and passwordLength.
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class TaskCrackPasswordRangeMessage implements Task {
+        private static final long serialVersionUID = -6532432086146437655L;
+        private int[] lineIDs;
         private String passwordChars;
         private int passwordLength;
-        private String password;
-        private String[] hints;
+        private byte[][] passwords;
+        private long rangeStart;
+        private long rangeEnd;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CancelCrackingMessage implements Serializable {
+        private static final long serialVersionUID = 2618925000235460312L;
+        private int lineID;
+        private int[] taskIDs; // The ranges of the line that the Master has assigned to this worker.
+    }
+
+    // Tests the permutations that miss the character at missingCharIndex and start with prefix against the given hints,
+    // or against the shared hint dictionary if hints is null. The i-th hint is reported as entry firstHintEntry + i.
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class TaskCrackHintsMessage implements Task {
+        private static final long serialVersionUID = -2353095311286513454L;
+        private String passwordChars;
+        private int missingCharIndex;
+        private String prefix;
+        private int firstHintEntry;
+        private byte[][] hints;
+    }
+
+    // Stops the hint tasks whose targets have all been found: the running one within a block of permutations and the
+    // queued ones right away, each of which is reported as completed. A task matches if it has the given firstHintEntry
+    // and missingCharIndex; ALL_MISSING_CHARS matches every missing character. All shared dictionary tasks have entry 0.
+    // The Master names the matching tasks of the worker, so that it can also drop those whose assignment is still on its way.
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CancelHintsMessage implements Serializable {
+        private static final long serialVersionUID = -3186524509842107262L;
+        private int firstHintEntry;
+        private int missingCharIndex;
+        private int[] taskIDs; // The matching tasks that the Master has assigned to this worker.
+
+        public boolean cancels(Task task) {
+            if (!(task instanceof TaskCrackHintsMessage)) {
+                return false;
+            }
+            TaskCrackHintsMessage hintTask = (TaskCrackHintsMessage) task;
+            return hintTask.firstHintEntry == this.firstHintEntry
+                    && (this.missingCharIndex == ALL_MISSING_CHARS || hintTask.missingCharIndex == this.missingCharIndex);
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class HintDictionaryMessage implements Serializable {
+        private static final long serialVersionUID = 6121983710236452174L;
+        private HintDictionary hintDictionary;
     }
 
     @Data
@@ -67,9 +164,19 @@ public class PasswordCrackingWorker extends AbstractLoggingActor {
     public static class WelcomeMessage implements Serializable {
         private static final long serialVersionUID = 8343040942748609598L;
         private BloomFilter welcomeData;
+        private String welcomeDataHash;
         private ActorRef sender;
     }
 
+    // Asks a worker to pass the welcome data on to the receiver as soon as it holds the data.
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RelayWelcomeMessage implements Serializable {
+        private static final long serialVersionUID = -2316104829570312544L;
+        private ActorRef receiver;
+    }
+
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
@@ -86,6 +193,15 @@ public class PasswordCrackingWorker extends AbstractLoggingActor {
         private static final long serialVersionUID = 889237489237984798L;
     }
 
+    // Piped back from the cracking dispatcher once an offloaded slice of the password search is done.
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    private static class SliceCrackedMessage implements Serializable {
+        private static final long serialVersionUID = -3164270745290178622L;
+        private YieldState yieldState;
+    }
+
     enum YieldState {
         YIELDED,
         COULD_NOT_CRACK,
@@ -99,19 +215,41 @@ public class PasswordCrackingWorker extends AbstractLoggingActor {
     private Member masterSystem;
     private final Cluster cluster;
     private final ActorRef largeMessageProxy;
+    private final MessageDispatcher crackingDispatcher; // Only set if the hashing loops are offloaded.
     private ActorRef masterRef;
     private long registrationTime;
-    private int lineID;
+    private WelcomeMessage welcomeMessage = null;
+    private final List<ActorRef> welcomeReceivers = new LinkedList<>(); // Waiting for the welcome data to be relayed to them.
+    private int[] lineIDs;
     private String passwordChars;
     private int passwordLength;
-    private String password;
-    private String[] hints;
-    private int numHintsCracked = 0;
-    private String crackedPassword = null;
+    private String[] crackedPasswords = null;
+    private boolean[] cancelledTargets = null;
+    private int numTargetsLeft;
+    private Task currentTask = null;
+    private int currentTaskID = NO_TASK_ID;
+    private final LinkedList<AssignTaskMessage> queuedTasks = new LinkedList<>();
+    // The lines whose password has been found, by the ranges of this worker that contain them. Cancellations only take
+    // effect between two slices, because an offloaded slice might still be using the targets. A cancellation may overtake
+    // the assignment of a task it stops, because assignments take the way through the LargeMessageProxies; the entries of
+    // a task are dropped once it has arrived and left the worker, so that they are bounded by the Master's window.
+    private final Int2ObjectOpenHashMap<IntArrayList> cancelledLinesByTask = new Int2ObjectOpenHashMap<>();
+    private final IntOpenHashSet cancelledHintTaskIDs = new IntOpenHashSet(); // Cancelled before their assignment arrived.
+    // The last tasks that left the worker, which the Master may still count as assigned when it cancels them.
+    private final IntLinkedOpenHashSet finishedTaskIDs = new IntLinkedOpenHashSet();
+
+    // Shared hint dictionary state
+    private HintDictionary hintDictionary = null;
+    private TaskCrackHintsMessage pendingHintTask = null;
 
     // Algorithm state
-    private char[] currentCombination = null;
-    private int[] currentPositions = null;
+    private HintDictionary targets = null; // The password digests of all lines, whose entries are the indices into lineIDs.
+    private CandidateHasher candidates = null;
+    private long rangeStart;
+    private long remainingCombinations;
+    private final SliceTimer sliceTimer = new SliceTimer(calculationDuration, TimeUnit.SECONDS);
+    // Cancelled if the running task should be stopped or, for ranges, should apply cancellations before its slice is over.
+    private CancellationToken cancellation = new CancellationToken();
 
     /////////////////////
     // Actor Lifecycle //
@@ -127,18 +265,14 @@ public class PasswordCrackingWorker extends AbstractLoggingActor {
     @Override
     public void postStop() {
         this.cluster.unsubscribe(this.self());
+        if (this.welcomeMessage != null)
+            WelcomeDataCache.get(this.context().system()).release(this.welcomeMessage.getWelcomeDataHash());
     }
 
     ////////////////////
     // Actor Behavior //
     ////////////////////
 
-    private void startCracking() {
-        numHintsCracked = 0;
-        //this.log().info("Starting HintCrackingWorker: " + HintCrackingWorker.DEFAULT_NAME + "_" + lineID);
-        this.context().actorOf(HintCrackingWorker.props(hints, passwordChars), HintCrackingWorker.DEFAULT_NAME + "_" + lineID);
-    }
-
     @Override
     public Receive createReceive() {
         return receiveBuilder()
@@ -146,9 +280,18 @@ public class PasswordCrackingWorker extends AbstractLoggingActor {
                 .match(MemberUp.class, this::handle)
                 .match(MemberRemoved.class, this::handle)
                 .match(WelcomeMessage.class, this::handle)
+                .match(RelayWelcomeMessage.class, this::handle)
                 .match(HintCrackedMessage.class, this::handle)
-                .match(TaskCrackPasswordMessage.class, this::handle)
+                .match(AssignTaskMessage.class, this::handle)
+                .match(Task.class, task -> this.handle(new AssignTaskMessage(NO_TASK_ID, task)))
+                .match(RevokeTaskMessage.class, this::handle)
+                .match(CancelCrackingMessage.class, this::handle)
+                .match(CancelHintsMessage.class, this::handle)
+                .match(HintDictionaryMessage.class, this::handle)
+                .match(Terminated.class, this::handle)
                 .match(ContinueCrackingMessage.class, this::handle)
+                .match(SliceCrackedMessage.class, this::handle)
+                .match(Status.Failure.class, this::handle)
                 .matchAny(object -> this.log().info("Received unknown message: \"{}\"", object.toString()))
                 .build();
     }
@@ -164,28 +307,189 @@ public class PasswordCrackingWorker extends AbstractLoggingActor {
         this.startPasswordCracking();
     }
 
+    private void handle(SliceCrackedMessage message) {
+        this.finishSlice(message.yieldState);
+    }
+
+    // A failed slice, also one of the HintCrackingWorker. A restart would lose the queued tasks without the Master noticing,
+    // so the worker stops instead and the Master reschedules all of its tasks once it sees the worker terminate.
+    private void handle(Status.Failure message) {
+        this.log().error(message.cause(), "Cracking failed on the " + CRACKING_DISPATCHER + "; stopping the worker.");
+        this.context().stop(this.self());
+    }
+
     private void handle(MemberUp message) {
         this.register(message.member());
     }
 
     private void resetState(){
-        currentCombination = null;
-        currentPositions = null;
+        currentTask = null;
+        targets = null;
+        candidates = null;
         passwordChars = null;
-        password = null;
-        hints = null;
+        crackedPasswords = null;
+        cancelledTargets = null;
+        cancellation = new CancellationToken();
+    }
+
+    private void setTargets(int[] lineIDs, byte[][] passwords) {
+        this.lineIDs = lineIDs;
+        targets = new HintDictionary(passwords);
+        crackedPasswords = new String[passwords.length];
+        cancelledTargets = new boolean[passwords.length];
+        numTargetsLeft = passwords.length;
     }
 
-    private void handle(TaskCrackPasswordMessage message) {
-        //this.log().info("Start cracking password");
+    private void handle(TaskCrackPasswordRangeMessage message) {
         resetState();
-        lineID = message.lineID;
+        currentTask = message;
+        setTargets(message.lineIDs, message.passwords);
         passwordChars = message.passwordChars;
         passwordLength = message.passwordLength;
-        password = message.password;
-        hints = message.hints;
-        crackedPassword = null;
-        startCracking();
+        rangeStart = message.rangeStart;
+        remainingCombinations = message.rangeEnd - message.rangeStart;
+        startPasswordCracking();
+    }
+
+    private void handle(AssignTaskMessage message) {
+        if (cancelledHintTaskIDs.remove(message.taskID)) {
+            this.getMasterActorRef().tell(new Master.HintTaskCompletedMessage(message.taskID, this.self()), this.self());
+            releaseTask(message.taskID);
+            return;
+        }
+        queuedTasks.add(message);
+        startNextTask();
+    }
+
+    private void startNextTask() {
+        if (currentTask != null || pendingHintTask != null) {
+            return;
+        }
+        AssignTaskMessage message = queuedTasks.poll();
+        if (message == null) {
+            return;
+        }
+        currentTaskID = message.taskID;
+        if (message.task instanceof TaskCrackPasswordRangeMessage) {
+            this.handle((TaskCrackPasswordRangeMessage) message.task);
+        } else if (message.task instanceof TaskCrackHintsMessage) {
+            this.handle((TaskCrackHintsMessage) message.task);
+        }
+    }
+
+    private void finishTask() {
+        releaseTask(currentTaskID);
+        resetState();
+        startNextTask();
+    }
+
+    // A task has been finished, dropped or revoked; cancellations that arrive later for it have nothing to stop.
+    private void releaseTask(int taskID) {
+        if (taskID == NO_TASK_ID) {
+            return;
+        }
+        cancelledLinesByTask.remove(taskID);
+        finishedTaskIDs.add(taskID);
+        if (finishedTaskIDs.size() > numFinishedTaskIDsToRemember) {
+            finishedTaskIDs.removeFirstInt();
+        }
+    }
+
+    private void handle(RevokeTaskMessage message) {
+        boolean revoked = queuedTasks.removeIf(queuedTask -> queuedTask.taskID == message.taskID);
+        if (revoked) {
+            releaseTask(message.taskID);
+        }
+        this.sender().tell(new Master.TaskRevokedMessage(message.taskID, revoked, this.self()), this.self());
+    }
+
+    private void handle(CancelCrackingMessage message) {
+        // Another range of the line contained the password; the next slice of this or a queued range does not look for it anymore.
+        for (int taskID : message.taskIDs) {
+            if (finishedTaskIDs.contains(taskID)) {
+                continue;
+            }
+            cancelledLinesByTask.computeIfAbsent(taskID, key -> new IntArrayList()).add(message.lineID);
+            if (taskID == currentTaskID && currentTask instanceof TaskCrackPasswordRangeMessage) {
+                // The running slice yields after its current block, so that the cancellation is applied right away.
+                cancellation.cancel();
+            }
+        }
+    }
+
+    private void handle(CancelHintsMessage message) {
+        for (int taskID : message.taskIDs) {
+            if (finishedTaskIDs.contains(taskID)) {
+                continue;
+            }
+            if (taskID == currentTaskID && pendingHintTask != null) {
+                pendingHintTask = null;
+                this.getMasterActorRef().tell(new Master.HintTaskCompletedMessage(taskID, this.self()), this.self());
+                releaseTask(taskID);
+            } else if (taskID == currentTaskID && currentTask != null) {
+                // The HintCrackingWorker stops after its current block, and its termination completes the task.
+                cancellation.cancel();
+            } else if (queuedTasks.removeIf(queuedTask -> queuedTask.taskID == taskID)) {
+                this.getMasterActorRef().tell(new Master.HintTaskCompletedMessage(taskID, this.self()), this.self());
+                releaseTask(taskID);
+            } else {
+                cancelledHintTaskIDs.add(taskID);
+            }
+        }
+        startNextTask();
+    }
+
+    private void applyCancellations() {
+        IntArrayList cancelledLines = cancelledLinesByTask.get(currentTaskID);
+        if (cancelledLines == null) {
+            return;
+        }
+        for (int i = 0; i < lineIDs.length; i++) {
+            if (cancelledLines.contains(lineIDs[i]) && crackedPasswords[i] == null && !cancelledTargets[i]) {
+                cancelledTargets[i] = true;
+                numTargetsLeft--;
+            }
+        }
+    }
+
+    private void handle(HintDictionaryMessage message) {
+        hintDictionary = message.getHintDictionary();
+        if (pendingHintTask != null) {
+            TaskCrackHintsMessage task = pendingHintTask;
+            pendingHintTask = null;
+            this.handle(task);
+        }
+    }
+
+    private void handle(TaskCrackHintsMessage message) {
+        if (message.hints == null && hintDictionary == null) {
+            // The dictionary is larger than the task and might still be in transit.
+            pendingHintTask = message;
+            return;
+        }
+        resetState();
+        currentTask = message;
+        HintDictionary targets = message.hints == null ? hintDictionary : new HintDictionary(message.hints);
+        ActorRef hintCrackingWorker = this.context().actorOf(HintCrackingWorker.props(targets, message.passwordChars, message.missingCharIndex, message.prefix,
+                message.hints != null, cancellation), HintCrackingWorker.DEFAULT_NAME + "_missing_" + message.missingCharIndex);
+        this.context().watch(hintCrackingWorker);
+    }
+
+    private void handle(Terminated message) {
+        // Only the HintCrackingWorkers of hint tasks are watched; they stop once their permutations are done.
+        if (!(currentTask instanceof TaskCrackHintsMessage)) {
+            return;
+        }
+        this.getMasterActorRef().tell(new Master.HintTaskCompletedMessage(currentTaskID, this.self()), this.self());
+        finishTask();
+    }
+
+    private void tellMaster(Serializable message) {
+        //this.getMasterActorSelection().tell(message, this.self());
+        ActorRef master = this.getMasterActorRef();
+        if(master != null){
+            this.largeMessageProxy.tell(new LargeMessageProxy.LargeMessage<>(message, master), this.self());
+        }
     }
 
     private ActorSelection getMasterActorSelection(){
@@ -222,38 +526,75 @@ public class PasswordCrackingWorker extends AbstractLoggingActor {
     }
 
     private void handle(HintCrackedMessage message) {
-        numHintsCracked++;
-        passwordChars = passwordChars.replace("" + message.hint, "");
-
-        if (numHintsCracked == hints.length) {
-            this.startPasswordCracking();
+        if (!(currentTask instanceof TaskCrackHintsMessage)) {
+            return;
         }
+        // Report each hint right away so that the Master can start the line's password search as early as possible.
+        // The results are small and are told directly, because only direct messages keep their order with the completion message.
+        int hintEntry = ((TaskCrackHintsMessage) currentTask).firstHintEntry + message.index;
+        this.getMasterActorRef().tell(new Master.HintsCrackedMessage(message.hint, new int[] { hintEntry }, this.self()), this.self());
     }
 
     private void handle(WelcomeMessage message) {
         final long transmissionTime = System.currentTimeMillis() - this.registrationTime;
         this.log().info("WelcomeMessage with " + message.getWelcomeData().getSizeInMB() + " MB data received in " + transmissionTime + " ms.");
         masterRef = message.sender;
+        if (this.welcomeMessage == null) {
+            // Keep the copy that the other workers of this actor system hold, so that the received one can be collected.
+            BloomFilter welcomeData = WelcomeDataCache.get(this.context().system()).intern(message.getWelcomeDataHash(), message.getWelcomeData());
+            this.welcomeMessage = new WelcomeMessage(welcomeData, message.getWelcomeDataHash(), message.getSender());
+            // The master stops tracking the relay this worker waited for; the confirmation is small and told directly.
+            masterRef.tell(new Master.WelcomeReceivedMessage(this.self()), this.self());
+            this.welcomeReceivers.forEach(this::relayWelcome);
+            this.welcomeReceivers.clear();
+        }
+    }
+
+    private void handle(RelayWelcomeMessage message) {
+        if (this.welcomeMessage == null)
+            this.welcomeReceivers.add(message.getReceiver());
+        else
+            this.relayWelcome(message.getReceiver());
+    }
+
+    private void relayWelcome(ActorRef receiver) {
+        // Receivers in this actor system share the data object, because the proxy hands local messages over directly.
+        this.largeMessageProxy.tell(new LargeMessageProxy.LargeMessage<>(this.welcomeMessage, receiver), this.self());
     }
 
     private void startPasswordCracking() {
-        YieldState yieldState = iteratePasswordForTaubeNuesschen();
+        if (currentTask == null) {
+            return;
+        }
+        applyCancellations();
+        if (cancellation.isCancelled()) {
+            cancellation = new CancellationToken();
+        }
+        if (numTargetsLeft == 0) {
+            this.tellMaster(new Master.PasswordRangeCrackedMessage(currentTaskID, lineIDs, crackedPasswords, this.self()));
+            finishTask();
+            return;
+        }
+        if (crackingDispatcher != null) {
+            // The slice only touches the algorithm state, which no handler changes while a task is running.
+            Patterns.pipe(CompletableFuture.supplyAsync(this::iteratePasswordForTaubeNuesschen, crackingDispatcher)
+                    .thenApply(SliceCrackedMessage::new), crackingDispatcher).to(this.self());
+            return;
+        }
+        this.finishSlice(iteratePasswordForTaubeNuesschen());
+    }
+
+    private void finishSlice(YieldState yieldState) {
         switch (yieldState) {
             case YIELDED:
                 this.self().tell(new ContinueCrackingMessage(), this.self());
                 break;
             case CRACKED:
-                Master.PasswordCrackedMessage passwordCrackedMessage = new Master.PasswordCrackedMessage(crackedPassword, lineID, this.self());
-                //this.getMasterActorSelection().tell(passwordCrackedMessage, this.self());
-                ActorRef master = this.getMasterActorRef();
-                if(master != null){
-                    this.largeMessageProxy.tell(new LargeMessageProxy.LargeMessage<>(passwordCrackedMessage, master), this.self());
-                }
-                resetState();
-                break;
             case COULD_NOT_CRACK:
-                this.log().error("Could not crack password: " + password + "!");
-                throw new IllegalStateException("Could not crack password: " + password + "!");
+                // The passwords that were not found are in other ranges; the Master gives a line up once all its ranges are done.
+                this.tellMaster(new Master.PasswordRangeCrackedMessage(currentTaskID, lineIDs, crackedPasswords, this.self()));
+                finishTask();
+                break;
         }
     }
 
@@ -264,52 +605,42 @@ public class PasswordCrackingWorker extends AbstractLoggingActor {
     // recursive function printAllKLengthRec()
 
     private YieldState iteratePasswordForTaubeNuesschen() {
-        long startTime = Instant.now().getEpochSecond();
-        if (crackedPassword != null) {
+        sliceTimer.startSlice();
+        if (numTargetsLeft == 0) {
             return YieldState.CRACKED;
         }
 
-        // from https://stackoverflow.com/a/31177163
-
-        if (currentCombination == null) {
-            // allocate an int array to hold the counts:
-            // allocate a char array to hold the current combination:
-            // initialize to the first value:
-            currentCombination = new char[passwordLength];
-            currentPositions = new int[passwordLength];
-            for (int i = 0; i < passwordLength; i++) {
-                currentCombination[i] = passwordChars.toCharArray()[0];
-            }
+        if (candidates == null) {
+            candidates = new CandidateHasher(passwordChars, passwordLength, rangeStart);
         }
 
-        int place;
-        do {
-            // output the current combination:
-            String currentCombinationString = new String(currentCombination);
-            if (Util.hash(currentCombinationString).equals(password)) {
-                crackedPassword = currentCombinationString;
-                return YieldState.CRACKED;
+        while (remainingCombinations > 0 && !candidates.isExhausted()) {
+            // test a block of combinations, each call those that differ from the current one only in their last character:
+            long remainingAfterBlock = remainingCombinations - Math.min(remainingCombinations, sliceTimer.getBlockSize());
+            while (remainingCombinations > remainingAfterBlock && !candidates.isExhausted()) {
+                int position = candidates.hashNext(remainingCombinations - remainingAfterBlock, targets);
+                remainingCombinations -= candidates.getNumHashed();
+                if (position >= 0 && crackTargets(position)) {
+                    return YieldState.CRACKED;
+                }
             }
 
-            if (Instant.now().getEpochSecond() - startTime > calculationDuration){
+            if (cancellation.isCancelled() || sliceTimer.finishBlock()) {
                 return YieldState.YIELDED;
             }
+        }
+        return YieldState.COULD_NOT_CRACK;
+    }
 
-            // move on to the next combination:
-            place = passwordLength - 1;
-            while (place >= 0) {
-                if (++currentPositions[place] == passwordChars.toCharArray().length) {
-                    // overflow, reset to zero
-                    currentPositions[place] = 0;
-                    currentCombination[place] = passwordChars.toCharArray()[0];
-                    place--; // and carry across to the next value
-                } else {
-                    // no overflow, just set the char value and we're done
-                    currentCombination[place] = passwordChars.toCharArray()[currentPositions[place]];
-                    break;
-                }
+    // Marks all lines whose password is the current combination as cracked; returns true if no line is left.
+    private boolean crackTargets(int position) {
+        for (; targets.matches(position, candidates.getDigest()); position++) {
+            int target = targets.getEntry(position);
+            if (crackedPasswords[target] == null && !cancelledTargets[target]) {
+                crackedPasswords[target] = candidates.getMatch();
+                numTargetsLeft--;
             }
-        } while (place >= 0);
-        return YieldState.COULD_NOT_CRACK;
+        }
+        return numTargetsLeft == 0;
     }
-}
\ No newline at end of file
+}
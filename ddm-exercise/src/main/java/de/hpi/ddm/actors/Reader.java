@@ -4,13 +4,15 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
-import com.opencsv.CSVReader;
-
 import akka.actor.AbstractLoggingActor;
 import akka.actor.Props;
+import de.hpi.ddm.actors.utils.PasswordFileReader;
 import de.hpi.ddm.singletons.ConfigurationSingleton;
 import de.hpi.ddm.singletons.DatasetDescriptorSingleton;
+import de.hpi.ddm.structures.PasswordRecord;
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 public class Reader extends AbstractLoggingActor {
 
@@ -28,20 +30,22 @@ public class Reader extends AbstractLoggingActor {
 	// Actor Messages //
 	////////////////////
 
-	@Data
+	// Requests the next numRecords records; the reader then reads as many ahead. The default is the configured bufferSize.
+	@Data @NoArgsConstructor @AllArgsConstructor
 	public static class ReadMessage implements Serializable {
 		private static final long serialVersionUID = -3254147511955012292L;
+		private int numRecords;
 	}
 	
 	/////////////////
 	// Actor State //
 	/////////////////
 	
-	private CSVReader reader;
+	private PasswordFileReader reader;
 	
 	private int bufferSize;
 	
-	private List<String[]> buffer;
+	private List<PasswordRecord> buffer;
 	
 	/////////////////////
 	// Actor Lifecycle //
@@ -51,11 +55,11 @@ public class Reader extends AbstractLoggingActor {
 	public void preStart() throws Exception {
 		Reaper.watchWithDefaultReaper(this);
 		
-		this.reader = DatasetDescriptorSingleton.get().createCSVReader();
+		this.reader = DatasetDescriptorSingleton.get().createPasswordFileReader();
 		this.bufferSize = ConfigurationSingleton.get().getBufferSize();
 		this.buffer = new ArrayList<>(this.bufferSize);
 		
-		this.read();
+		this.read(this.bufferSize);
 	}
 
 	@Override
@@ -76,16 +80,19 @@ public class Reader extends AbstractLoggingActor {
 	}
 
 	private void handle(ReadMessage message) throws Exception {
-		this.sender().tell(new Master.BatchMessage(new ArrayList<>(this.buffer)), this.self());
+		int numRecords = message.getNumRecords() > 0 ? message.getNumRecords() : this.bufferSize;
+		this.read(numRecords);
+		
+		List<PasswordRecord> batch = this.buffer.subList(0, Math.min(numRecords, this.buffer.size()));
+		this.sender().tell(new Master.BatchMessage(new ArrayList<>(batch)), this.self());
+		batch.clear();
 		
-		this.read();
+		this.read(numRecords);
 	}
 	
-	private void read() throws Exception {
-		this.buffer.clear();
-		
-		String[] line;
-		while ((this.buffer.size() < this.bufferSize) && ((line = this.reader.readNext()) != null))
-			this.buffer.add(line);
+	private void read(int numRecords) throws Exception {
+		PasswordRecord record;
+		while ((this.buffer.size() < numRecords) && ((record = this.reader.next()) != null))
+			this.buffer.add(record);
 	}
 }
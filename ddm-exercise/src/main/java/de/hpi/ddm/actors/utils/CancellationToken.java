@@ -0,0 +1,17 @@
+package de.hpi.ddm.actors.utils;
+
+// Lets an actor stop a cracking loop that runs in its child actor or on the cracking dispatcher before the loop's slice is
+// over: the actor cancels the token when it learns that the loop's targets have been found elsewhere, and the loop looks
+// at the token together with its SliceTimer after every block of candidates.
+public class CancellationToken {
+
+    private volatile boolean cancelled = false;
+
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+}
@@ -0,0 +1,100 @@
+package de.hpi.ddm.actors.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+
+import de.hpi.ddm.structures.HintDictionary;
+
+// Enumerates the combinations of passwordLength characters over passwordChars in the order of Util.numCombinations(),
+// i.e. the last position changes fastest, and hashes them into targets. The candidate is an odometer over one reusable
+// byte buffer (see https://stackoverflow.com/a/31177163): only the last character is written for most candidates, and
+// the characters of the last position are hashed in a tight loop that does nothing but hash and look up. The candidates
+// are far shorter than one 64 byte SHA-256 block, so there is no compressed prefix whose state could be reused; the
+// hasher owns its MessageDigest instead, whose compression function the JVM runs on the CPU's SHA instructions if it can.
+public class CandidateHasher {
+
+    private final MessageDigest messageDigest = Util.createSha256();
+    private final byte[] chars;
+    private final int length;
+    private final byte[] candidate;
+    private final int[] positions;
+    private final byte[] digest = new byte[Util.DIGEST_LENGTH];
+    private boolean exhausted = false;
+    private int numHashed = 0;
+    private String match = null;
+
+    // Starts at the combination with the given index, whose digits in base passwordChars.length() are the positions.
+    public CandidateHasher(String passwordChars, int passwordLength, long start) {
+        this.chars = Util.toBytes(passwordChars);
+        this.length = passwordLength;
+        this.candidate = new byte[passwordLength];
+        this.positions = new int[passwordLength];
+        for (int i = passwordLength - 1; i >= 0; i--) {
+            this.positions[i] = (int) (start % this.chars.length);
+            this.candidate[i] = this.chars[this.positions[i]];
+            start /= this.chars.length;
+        }
+        this.exhausted = start > 0 || this.chars.length == 0;
+    }
+
+    // Hashes the next candidates up to the end of the current last position, but at most maxCandidates of them, and stops
+    // after the first one whose digest is in targets. Returns its position in targets or -1; either way, the hasher has
+    // moved on past the hashed candidates, see getNumHashed(), and the match is kept in getMatch() and getDigest().
+    public int hashNext(long maxCandidates, HintDictionary targets) {
+        int last = this.length - 1;
+        int first = this.positions[last];
+        int end = first + (int) Math.min(this.chars.length - first, maxCandidates);
+        int position = -1;
+        int i = first;
+        while (i < end) {
+            this.candidate[last] = this.chars[i++];
+            this.messageDigest.update(this.candidate, 0, this.length);
+            try {
+                this.messageDigest.digest(this.digest, 0, Util.DIGEST_LENGTH);
+            } catch (DigestException e) {
+                throw new RuntimeException(e.getMessage());
+            }
+            if ((position = targets.find(this.digest)) >= 0) {
+                this.match = new String(this.candidate, 0, this.length, StandardCharsets.US_ASCII);
+                break;
+            }
+        }
+        this.numHashed = i - first;
+        this.advance(i);
+        return position;
+    }
+
+    // Sets the last position to lastPosition and carries an overflow over to the previous positions.
+    private void advance(int lastPosition) {
+        int place = this.length - 1;
+        this.positions[place] = lastPosition;
+        while (this.positions[place] == this.chars.length) {
+            this.positions[place] = 0;
+            this.candidate[place] = this.chars[0];
+            if (--place < 0) {
+                this.exhausted = true; // Wrapped around after the last combination.
+                return;
+            }
+            this.positions[place]++;
+        }
+        this.candidate[place] = this.chars[this.positions[place]];
+    }
+
+    // True once every combination from the start on has been hashed.
+    public boolean isExhausted() {
+        return this.exhausted;
+    }
+
+    public int getNumHashed() {
+        return this.numHashed;
+    }
+
+    public String getMatch() {
+        return this.match;
+    }
+
+    public byte[] getDigest() {
+        return this.digest;
+    }
+}
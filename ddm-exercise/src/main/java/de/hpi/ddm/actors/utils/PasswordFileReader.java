@@ -0,0 +1,208 @@
+package de.hpi.ddm.actors.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import de.hpi.ddm.structures.PasswordRecord;
+
+// Reads password files of the schema ID;Name;PasswordChars;PasswordLength;Password;Hint1;...;HintN straight from a
+// memory mapping of the file. The fields are split in place and the hashes are decoded into their digests, so that
+// the only objects per line are the record and its digests; the name column is skipped. Quoted values are not supported.
+public class PasswordFileReader implements Closeable {
+
+    private static final int MAPPING_SIZE = 64 * 1024 * 1024; // The file is mapped window by window, so that it may exceed 2 GB.
+    private static final int ID_FIELD = 0;
+    private static final int PASSWORD_CHARS_FIELD = 2;
+    private static final int PASSWORD_LENGTH_FIELD = 3;
+    private static final int PASSWORD_FIELD = 4;
+    private static final int FIRST_HINT_FIELD = 5;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final Charset charset;
+    private final byte separator;
+    private final boolean ignoreLeadingWhitespace;
+    private final boolean skipDifferingLines;
+
+    private MappedByteBuffer mapping;
+    private long mappingStart;
+    private int lineNumber = 0;
+    private int numFieldsOfFirstLine = -1;
+    private int[] fieldStarts = new int[16];
+    private int[] fieldEnds = new int[16];
+
+    // All records with the same alphabet share one String; the last alphabet is recognized without creating a new one.
+    private final HashMap<String, String> passwordChars = new HashMap<>();
+    private byte[] lastPasswordCharsBytes = new byte[0];
+    private String lastPasswordChars = "";
+
+    public PasswordFileReader(Path path, Charset charset, char separator, boolean hasHeader, boolean ignoreLeadingWhitespace,
+            boolean skipDifferingLines) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.fileSize = this.channel.size();
+        this.charset = charset;
+        this.separator = (byte) separator;
+        this.ignoreLeadingWhitespace = ignoreLeadingWhitespace;
+        this.skipDifferingLines = skipDifferingLines;
+        this.map(0);
+
+        int headerEnd;
+        if (hasHeader && (headerEnd = this.nextLineEnd()) >= 0) {
+            this.skipLine(headerEnd);
+        }
+    }
+
+    // Returns the next record or null at the end of the file.
+    public PasswordRecord next() throws IOException {
+        int lineEnd;
+        while ((lineEnd = this.nextLineEnd()) >= 0) {
+            int lineStart = this.mapping.position();
+            this.skipLine(lineEnd);
+            if (lineEnd > lineStart && this.mapping.get(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+            if (lineEnd == lineStart) {
+                continue;
+            }
+            int numFields = this.split(lineStart, lineEnd);
+            if (this.numFieldsOfFirstLine < 0) {
+                this.numFieldsOfFirstLine = numFields;
+            } else if (this.skipDifferingLines && numFields != this.numFieldsOfFirstLine) {
+                continue;
+            }
+            return this.parse(numFields);
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    private void map(long start) throws IOException {
+        this.mappingStart = start;
+        this.mapping = this.channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(MAPPING_SIZE, this.fileSize - start));
+    }
+
+    // The index of the newline that ends the line at the mapping's position, which is remapped to start at the line if
+    // the line crosses the end of the mapping; the limit for a last line without newline and -1 at the end of the file.
+    private int nextLineEnd() throws IOException {
+        while (true) {
+            int start = this.mapping.position();
+            int limit = this.mapping.limit();
+            for (int i = start; i < limit; i++) {
+                if (this.mapping.get(i) == '\n') {
+                    return i;
+                }
+            }
+            if (this.mappingStart + limit == this.fileSize) {
+                return start == limit ? -1 : limit;
+            }
+            if (start == 0) {
+                throw new IOException("Line " + (this.lineNumber + 1) + " is longer than " + MAPPING_SIZE + " bytes.");
+            }
+            this.map(this.mappingStart + start);
+        }
+    }
+
+    private void skipLine(int lineEnd) {
+        this.mapping.position(Math.min(lineEnd + 1, this.mapping.limit()));
+        this.lineNumber++;
+    }
+
+    private int split(int lineStart, int lineEnd) {
+        int numFields = 0;
+        int fieldStart = lineStart;
+        for (int i = lineStart; i <= lineEnd; i++) {
+            if (i < lineEnd && this.mapping.get(i) != this.separator) {
+                continue;
+            }
+            if (numFields == this.fieldStarts.length) {
+                this.fieldStarts = Arrays.copyOf(this.fieldStarts, 2 * numFields);
+                this.fieldEnds = Arrays.copyOf(this.fieldEnds, 2 * numFields);
+            }
+            if (this.ignoreLeadingWhitespace) {
+                while (fieldStart < i && Character.isWhitespace(this.mapping.get(fieldStart))) {
+                    fieldStart++;
+                }
+            }
+            this.fieldStarts[numFields] = fieldStart;
+            this.fieldEnds[numFields] = i;
+            numFields++;
+            fieldStart = i + 1;
+        }
+        return numFields;
+    }
+
+    private PasswordRecord parse(int numFields) throws IOException {
+        if (numFields < FIRST_HINT_FIELD) {
+            throw new IOException("Line " + this.lineNumber + " has " + numFields + " instead of at least " + FIRST_HINT_FIELD + " fields.");
+        }
+        byte[][] hintDigests = new byte[numFields - FIRST_HINT_FIELD][];
+        for (int i = 0; i < hintDigests.length; i++) {
+            hintDigests[i] = this.parseDigest(FIRST_HINT_FIELD + i);
+        }
+        return new PasswordRecord(this.parseInt(ID_FIELD), this.parsePasswordChars(PASSWORD_CHARS_FIELD), this.parseInt(PASSWORD_LENGTH_FIELD),
+                this.parseDigest(PASSWORD_FIELD), hintDigests);
+    }
+
+    private int parseInt(int field) throws IOException {
+        int start = this.fieldStarts[field];
+        int end = this.fieldEnds[field];
+        if (start == end) {
+            throw new IOException("Line " + this.lineNumber + " has no number in field " + (field + 1) + ".");
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = this.mapping.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IOException("Line " + this.lineNumber + " has no number in field " + (field + 1) + ".");
+            }
+            value = 10 * value + digit;
+        }
+        return value;
+    }
+
+    private byte[] parseDigest(int field) throws IOException {
+        int start = this.fieldStarts[field];
+        if (this.fieldEnds[field] - start != 2 * Util.DIGEST_LENGTH) {
+            throw new IOException("Line " + this.lineNumber + " has no SHA-256 hex hash in field " + (field + 1) + ".");
+        }
+        byte[] digest = new byte[Util.DIGEST_LENGTH];
+        for (int i = 0; i < Util.DIGEST_LENGTH; i++) {
+            int high = Character.digit(this.mapping.get(start + 2 * i), 16);
+            int low = Character.digit(this.mapping.get(start + 2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IOException("Line " + this.lineNumber + " has no SHA-256 hex hash in field " + (field + 1) + ".");
+            }
+            digest[i] = (byte) ((high << 4) | low);
+        }
+        return digest;
+    }
+
+    private String parsePasswordChars(int field) {
+        int start = this.fieldStarts[field];
+        int length = this.fieldEnds[field] - start;
+        boolean isLast = length == this.lastPasswordCharsBytes.length;
+        for (int i = 0; isLast && i < length; i++) {
+            isLast = this.mapping.get(start + i) == this.lastPasswordCharsBytes[i];
+        }
+        if (!isLast) {
+            this.lastPasswordCharsBytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                this.lastPasswordCharsBytes[i] = this.mapping.get(start + i);
+            }
+            String passwordChars = new String(this.lastPasswordCharsBytes, this.charset);
+            this.lastPasswordChars = this.passwordChars.computeIfAbsent(passwordChars, chars -> chars);
+        }
+        return this.lastPasswordChars;
+    }
+}
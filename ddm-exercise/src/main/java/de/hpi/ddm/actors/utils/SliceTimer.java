@@ -0,0 +1,45 @@
+package de.hpi.ddm.actors.utils;
+
+import java.util.concurrent.TimeUnit;
+
+// Tells a cracking loop when its slice is over without looking at the clock for every candidate. The loop tests the
+// candidates in blocks of getBlockSize() and calls finishBlock() after each block, which is the only place that reads
+// System.nanoTime(). The block size is tuned after every block so that a block takes about 1/BLOCKS_PER_SLICE of the
+// slice; a loop keeps its timer across slices, so that each slice starts with the tuned size.
+public class SliceTimer {
+
+    private static final int BLOCKS_PER_SLICE = 100;
+    private static final int INITIAL_BLOCK_SIZE = 1024;
+    private static final int MAX_BLOCK_SIZE = 1 << 24;
+
+    private final long sliceNanos;
+    private final long blockNanos;
+    private int blockSize = INITIAL_BLOCK_SIZE;
+    private long sliceStart;
+    private long blockStart;
+
+    public SliceTimer(long sliceDuration, TimeUnit unit) {
+        this.sliceNanos = unit.toNanos(sliceDuration);
+        this.blockNanos = Math.max(1, this.sliceNanos / BLOCKS_PER_SLICE);
+    }
+
+    public void startSlice() {
+        this.sliceStart = this.blockStart = System.nanoTime();
+    }
+
+    public int getBlockSize() {
+        return this.blockSize;
+    }
+
+    // Tunes the block size to the time that the last block took; returns true if the slice is over.
+    public boolean finishBlock() {
+        long now = System.nanoTime();
+        long elapsed = Math.max(1, now - this.blockStart);
+        // Change the size by at most a factor of 2 per block, so that a single slow block, e.g. one with a garbage
+        // collection, does not throw the size off.
+        double factor = Math.max(0.5, Math.min(2.0, (double) this.blockNanos / elapsed));
+        this.blockSize = (int) Math.max(1, Math.min(MAX_BLOCK_SIZE, this.blockSize * factor));
+        this.blockStart = now;
+        return now - this.sliceStart >= this.sliceNanos;
+    }
+}
@@ -1,25 +1,141 @@
 package de.hpi.ddm.actors.utils;
 
-import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import de.hpi.ddm.structures.BloomFilter;
 
 public class Util {
 
+    public static final int DIGEST_LENGTH = 32; // SHA-256 digests are 32 bytes long.
+
+    // MessageDigest instances are not thread safe, but expensive to create; each thread keeps its own.
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(Util::createSha256);
+
+    private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+
+    public static MessageDigest createSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e.getMessage());
+        }
+    }
+
     //to be able to use this in both cracking workers
     public static String hash(String characters) {
+        return encodeHex(SHA_256.get().digest(characters.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // Hashes the first length bytes of characters into digest without allocating anything; the candidate alphabets
+    // are plain ASCII, so their bytes are exactly what hash(String) would feed into the digest.
+    public static void hash(byte[] characters, int length, byte[] digest) {
+        MessageDigest messageDigest = SHA_256.get();
+        messageDigest.update(characters, 0, length);
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hashedBytes = digest.digest(String.valueOf(characters).getBytes("UTF-8"));
+            messageDigest.digest(digest, 0, DIGEST_LENGTH);
+        } catch (DigestException e) {
+            throw new RuntimeException(e.getMessage());
+        }
+    }
+
+    public static boolean digestEquals(byte[] digest, byte[] otherDigest) {
+        return Arrays.equals(digest, otherDigest);
+    }
 
-            StringBuffer stringBuffer = new StringBuffer();
-            for (int i = 0; i < hashedBytes.length; i++) {
-                stringBuffer.append(Integer.toString((hashedBytes[i] & 0xff) + 0x100, 16).substring(1));
+    public static byte[] decodeHex(String hexHash) {
+        if (hexHash.length() != 2 * DIGEST_LENGTH) {
+            throw new IllegalArgumentException("Not a SHA-256 hex hash: " + hexHash);
+        }
+        byte[] digest = new byte[DIGEST_LENGTH];
+        for (int i = 0; i < DIGEST_LENGTH; i++) {
+            int high = Character.digit(hexHash.charAt(2 * i), 16);
+            int low = Character.digit(hexHash.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("Not a SHA-256 hex hash: " + hexHash);
             }
-            return stringBuffer.toString();
+            digest[i] = (byte) ((high << 4) | low);
         }
-        catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
-            throw new RuntimeException(e.getMessage());
+        return digest;
+    }
+
+    public static byte[][] decodeHex(String[] hexHashes) {
+        byte[][] digests = new byte[hexHashes.length][];
+        for (int i = 0; i < hexHashes.length; i++) {
+            digests[i] = decodeHex(hexHashes[i]);
+        }
+        return digests;
+    }
+
+    // The content hash of a BloomFilter, which identifies equal welcome data no matter which copy it was computed on.
+    public static String hash(BloomFilter bloomFilter) {
+        MessageDigest messageDigest = SHA_256.get();
+        messageDigest.update(ByteBuffer.allocate(4).putInt(bloomFilter.getSize()).array());
+        bloomFilter.getBits().digest(messageDigest);
+        return encodeHex(messageDigest.digest());
+    }
+
+    public static String encodeHex(byte[] digest) {
+        char[] hex = new char[2 * digest.length];
+        for (int i = 0; i < digest.length; i++) {
+            hex[2 * i] = HEX_CHARS[(digest[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX_CHARS[digest[i] & 0xf];
         }
+        return new String(hex);
+    }
+
+    // The number of combinations of the given length over numChars characters; saturates at Long.MAX_VALUE.
+    public static long numCombinations(int numChars, int length) {
+        if (numChars == 0) {
+            return length == 0 ? 1 : 0;
+        }
+        long numCombinations = 1;
+        for (int i = 0; i < length; i++) {
+            if (numCombinations > Long.MAX_VALUE / numChars) {
+                return Long.MAX_VALUE;
+            }
+            numCombinations *= numChars;
+        }
+        return numCombinations;
+    }
+
+    public static String removeChars(String chars, String charsToRemove) {
+        StringBuilder remainingChars = new StringBuilder(chars.length());
+        for (int i = 0; i < chars.length(); i++) {
+            if (charsToRemove.indexOf(chars.charAt(i)) < 0) {
+                remainingChars.append(chars.charAt(i));
+            }
+        }
+        return remainingChars.toString();
+    }
+
+    // The number of distinct ordered prefixes of the given length that can be formed from numChars characters.
+    public static int numPermutationPrefixes(int numChars, int prefixLength) {
+        int numPrefixes = 1;
+        for (int i = 0; i < prefixLength; i++) {
+            numPrefixes *= numChars - i;
+        }
+        return numPrefixes;
+    }
+
+    // Decodes the prefixIndex-th prefix of the permutations of chars; prefixIndex < numPermutationPrefixes(chars.length(), prefixLength).
+    public static String permutationPrefix(String chars, int prefixLength, int prefixIndex) {
+        StringBuilder remainingChars = new StringBuilder(chars);
+        StringBuilder prefix = new StringBuilder(prefixLength);
+        for (int i = 0; i < prefixLength; i++) {
+            int charIndex = prefixIndex % remainingChars.length();
+            prefixIndex /= remainingChars.length();
+            prefix.append(remainingChars.charAt(charIndex));
+            remainingChars.deleteCharAt(charIndex);
+        }
+        return prefix.toString();
+    }
+
+    public static byte[] toBytes(String passwordChars) {
+        return passwordChars.getBytes(StandardCharsets.US_ASCII);
     }
 }
@@ -16,5 +16,29 @@ public abstract class Command {
 
 	@Parameter(names = { "-w", "--numWorkers" }, description = "The number of workers (indexers/validators) to start locally; should be at least one if the algorithm is started standalone (otherwise there are no workers to run the discovery)", required = false)
 	int numWorkers = ConfigurationSingleton.get().getNumWorkers();
+
+	@Parameter(names = { "-oc", "--offloadCracking" }, description = "Run the workers' hashing loops on the dedicated cracking dispatcher instead of the default dispatcher, which then only handles messages", required = false, arity = 1)
+	boolean offloadCracking = ConfigurationSingleton.get().isOffloadCracking();
+
+	@Parameter(names = { "-ct", "--crackingThreads" }, description = "The number of threads of the cracking dispatcher; defaults to the number of cores", required = false)
+	int crackingThreads = ConfigurationSingleton.get().getCrackingThreads();
+
+	@Parameter(names = { "-htd", "--hintTableDirectory" }, description = "Look hints up in the precomputed hint tables of this directory if there is one for their alphabet (see the hinttable command); the hints of such an alphabet ignore --hintPrefixLength", required = false)
+	String hintTableDirectory = ConfigurationSingleton.get().getHintTableDirectory();
+
+	@Parameter(names = { "-lmw", "--largeMessageWindow" }, description = "The number of chunks of bulk transfers that a large message proxy sends ahead without waiting for their acknowledgement", required = false)
+	int largeMessageWindow = ConfigurationSingleton.get().getLargeMessageWindow();
+
+	@Parameter(names = { "-lmt", "--largeMessageTransport" }, description = "How large message proxies transfer messages: \"chunks\" with their own acknowledgements or \"stream\" through Akka Streams' SourceRefs", required = false)
+	String largeMessageTransport = ConfigurationSingleton.get().getLargeMessageTransport();
+
+	@Parameter(names = { "-lmld", "--largeMessageLocalDelivery" }, description = "Hand large messages for receivers in the same actor system over directly instead of serializing them", required = false, arity = 1)
+	boolean largeMessageLocalDelivery = ConfigurationSingleton.get().isLargeMessageLocalDelivery();
+
+	@Parameter(names = { "-lmc", "--largeMessageCodec" }, description = "How large message proxies compress serialized messages: \"none\" or \"deflate\"", required = false)
+	String largeMessageCodec = ConfigurationSingleton.get().getLargeMessageCodec();
+
+	@Parameter(names = { "-lmct", "--largeMessageCompressionThreshold" }, description = "The size in bytes from which on serialized messages are compressed with the largeMessageCodec", required = false)
+	int largeMessageCompressionThreshold = ConfigurationSingleton.get().getLargeMessageCompressionThreshold();
 	
 }
@@ -0,0 +1,17 @@
+package de.hpi.ddm.configuration;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+
+import de.hpi.ddm.singletons.ConfigurationSingleton;
+
+@Parameters(commandDescription = "precompute the hint table of an alphabet")
+public class CommandHintTable {
+
+	@Parameter(names = { "-hc", "--hintChars" }, description = "The alphabet whose hints should be precomputed, i.e., the PasswordChars of the input data", required = false)
+	String hintChars = ConfigurationSingleton.get().getHintChars();
+
+	@Parameter(names = { "-htd", "--hintTableDirectory" }, description = "The directory to write the hint table into", required = false)
+	String hintTableDirectory = "hints";
+
+}
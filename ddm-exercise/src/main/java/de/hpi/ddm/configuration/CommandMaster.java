@@ -19,11 +19,35 @@ public class CommandMaster extends Command {
 	@Parameter(names = { "-sp", "--startPaused" }, description = "Wait for some console input to start the discovery; useful, if we want to wait manually until all ActorSystems in the cluster are started (e.g. to avoid work stealing effects in performance evaluations)", required = false, arity = 1)
 	boolean startPaused = ConfigurationSingleton.get().isStartPaused();
 
-	@Parameter(names = { "-bs", "--bufferSize" }, description = "Buffer for input reading (the DatasetReader pre-fetches and buffers this many records)", required = false)
+	@Parameter(names = { "-bs", "--bufferSize" }, description = "Buffer for input reading (the DatasetReader pre-fetches and buffers at least this many records)", required = false)
 	int bufferSize = ConfigurationSingleton.get().getBufferSize();
 
+	@Parameter(names = { "-ram", "--readAheadMemory" }, description = "The heap size (in MB) that the master may fill with read-ahead lines; below it, the read-ahead adapts to the number of workers and the rate at which they consume lines", required = false)
+	int readAheadMemory = ConfigurationSingleton.get().getReadAheadMemory();
+
 	@Parameter(names = { "-wms", "--welcomeMessageSize" }, description = "Size of the welcome message's data (in MB) with which each worker should be greeted.", required = false)
 	int welcomeDataSize = ConfigurationSingleton.get().getWelcomeDataSize();
+
+	@Parameter(names = { "-wf", "--welcomeFanout" }, description = "The number of actor systems to which each actor system relays the welcome data, which every actor system receives only once; 0 to send it from the master to every worker", required = false)
+	int welcomeFanout = ConfigurationSingleton.get().getWelcomeFanout();
+
+	@Parameter(names = { "-shd", "--sharedHintDictionary" }, description = "Read all records first and crack the hints of all records with one shared dictionary, i.e., hash each permutation only once for all records", required = false, arity = 1)
+	boolean sharedHintDictionary = ConfigurationSingleton.get().isSharedHintDictionary();
+
+	@Parameter(names = { "-prs", "--passwordRangeSize" }, description = "The number of password combinations that the master assigns to a worker at once; larger password spaces are split among several workers", required = false)
+	int passwordRangeSize = ConfigurationSingleton.get().getPasswordRangeSize();
+
+	@Parameter(names = { "-hpl", "--hintPrefixLength" }, description = "The number of fixed leading characters per hint task; each missing character is split into (n-1)!/(n-1-l)! tasks of the hint permutations", required = false)
+	int hintPrefixLength = ConfigurationSingleton.get().getHintPrefixLength();
+
+	@Parameter(names = { "-pt", "--prefetchTasks" }, description = "The number of tasks that each worker keeps queued besides its running task, so that it never waits for the master; idle workers steal them from busy ones", required = false)
+	int prefetchTasks = ConfigurationSingleton.get().getPrefetchTasks();
+
+	@Parameter(names = { "-o", "--outputFile" }, description = "The file to which the collector writes the cracked passwords in line ID order while the job runs", required = false)
+	String outputFile = ConfigurationSingleton.get().getOutputFile();
+
+	@Parameter(names = { "-rw", "--reorderWindow" }, description = "The number of results that the collector holds back for missing smaller line IDs before it writes them out of line ID order", required = false)
+	int reorderWindow = ConfigurationSingleton.get().getReorderWindow();
 	
 	// DatasetDescriptor
 	
@@ -6,8 +6,10 @@ import java.net.UnknownHostException;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.ParameterException;
 
+import de.hpi.ddm.actors.LargeMessageProxy;
 import de.hpi.ddm.singletons.DatasetDescriptorSingleton;
 import de.hpi.ddm.structures.BloomFilter;
+import de.hpi.ddm.structures.HintTable;
 import de.hpi.ddm.systems.MasterSystem;
 import de.hpi.ddm.systems.WorkerSystem;
 import lombok.Data;
@@ -30,12 +32,46 @@ public class Configuration {
 	
 	private int numWorkers = 4;						// The number of workers to start locally; should be at least one if the algorithm is started standalone (otherwise there are no workers to run the application)
 	
+	private boolean offloadCracking = false;		// Run the workers' hashing loops on the dedicated cracking dispatcher instead of the default dispatcher, which then only handles messages
+	
+	private int crackingThreads = Runtime.getRuntime().availableProcessors();	// The number of threads of the cracking dispatcher
+	
+	private String hintTableDirectory = "";			// Look hints up in the precomputed hint tables of this directory if there is one for their alphabet; empty to always brute force them
+	
+	private int largeMessageWindow = 8;				// The number of bulk transfer chunks that a large message proxy sends ahead without waiting for their acknowledgement
+	
+	private boolean largeMessageLocalDelivery = true;	// Hand large messages for receivers in the same actor system over directly instead of serializing them
+	
+	private String largeMessageTransport = LargeMessageProxy.CHUNK_TRANSPORT;	// How large message proxies transfer messages: "chunks" with their own acknowledgements or "stream" through Akka Streams' SourceRefs
+	
+	private String largeMessageCodec = LargeMessageProxy.NO_CODEC;	// How large message proxies compress serialized messages: "none" or "deflate"
+	
+	private int largeMessageCompressionThreshold = 64 * 1024;	// The size in bytes from which on serialized messages are compressed with the largeMessageCodec
+
+	private String hintChars = "ABCDEFGHIJK";		// The alphabet whose hint table the hinttable command writes
+	
 	private boolean startPaused = false;			// Wait for some console input to start; useful, if we want to wait manually until all ActorSystems in the cluster are started (e.g. to avoid work stealing effects in performance evaluations)
 	
-	private int bufferSize = 50; 					// Buffer for input reading (the DatasetReader pre-fetches and buffers this many records)
+	private int bufferSize = 50; 					// Buffer for input reading (the DatasetReader pre-fetches and buffers at least this many records)
+	
+	private int readAheadMemory = 64;				// The heap size (in MB) that the master may fill with read-ahead lines, which otherwise adapt to the number of workers and their consumption rate
 	
 	private int welcomeDataSize = 0; 				// Size of the welcome message's data (in MB) with which each worker should be greeted
 	
+	private int welcomeFanout = 2;					// The number of actor systems to which each actor system relays the welcome data; 0 to send it from the master to every worker
+	
+	private boolean sharedHintDictionary = false;	// Read all records first and crack the hints of all records with one shared dictionary, i.e., hash each permutation only once
+	
+	private int passwordRangeSize = 1000000;		// The number of password combinations that the master assigns to a worker at once; larger password spaces are split among several workers
+	
+	private int prefetchTasks = 1;					// The number of tasks that each worker keeps queued besides its running task, so that it never waits for the master; idle workers steal them from busy ones
+	
+	private String outputFile = "results.csv";		// The file to which the collector writes the cracked passwords in line ID order while the job runs
+	
+	private int reorderWindow = 10000;				// The number of results that the collector holds back for missing smaller line IDs before it writes them out of line ID order
+	
+	private int hintPrefixLength = 1;				// The number of fixed leading characters per hint task; each missing character is split into (n-1)!/(n-1-l)! tasks of the hint permutations
+	
 	private static String getDefaultHost() {
         try {
             return InetAddress.getLocalHost().getHostAddress();
@@ -47,9 +83,11 @@ public class Configuration {
 	public void updateWith(String[] args) {
 		CommandMaster commandMaster = new CommandMaster();
         CommandWorker commandWorker = new CommandWorker();
+        CommandHintTable commandHintTable = new CommandHintTable();
         JCommander jCommander = JCommander.newBuilder()
         	.addCommand(MasterSystem.MASTER_ROLE, commandMaster)
             .addCommand(WorkerSystem.WORKER_ROLE, commandWorker)
+            .addCommand(HintTable.COMMAND, commandHintTable)
             .build();
         
         try {
@@ -69,6 +107,11 @@ public class Configuration {
                 	this.update(commandWorker);
                 	DatasetDescriptorSingleton.set(null);
                     break;
+                case HintTable.COMMAND:
+                	this.role = HintTable.COMMAND;
+                	this.update(commandHintTable);
+                	DatasetDescriptorSingleton.set(null);
+                    break;
                 default:
                     throw new AssertionError();
             }
@@ -83,9 +126,25 @@ public class Configuration {
 		this.host = commandMaster.host;
 		this.port = commandMaster.port;
 		this.numWorkers = commandMaster.numWorkers;
+		this.offloadCracking = commandMaster.offloadCracking;
+		this.crackingThreads = commandMaster.crackingThreads;
+		this.hintTableDirectory = commandMaster.hintTableDirectory;
+		this.largeMessageWindow = commandMaster.largeMessageWindow;
+		this.largeMessageTransport = commandMaster.largeMessageTransport;
+		this.largeMessageLocalDelivery = commandMaster.largeMessageLocalDelivery;
+		this.largeMessageCodec = commandMaster.largeMessageCodec;
+		this.largeMessageCompressionThreshold = commandMaster.largeMessageCompressionThreshold;
 		this.startPaused = commandMaster.startPaused;
 		this.bufferSize = commandMaster.bufferSize;
+		this.readAheadMemory = commandMaster.readAheadMemory;
 		this.welcomeDataSize = commandMaster.welcomeDataSize;
+		this.welcomeFanout = commandMaster.welcomeFanout;
+		this.sharedHintDictionary = commandMaster.sharedHintDictionary;
+		this.passwordRangeSize = commandMaster.passwordRangeSize;
+		this.hintPrefixLength = commandMaster.hintPrefixLength;
+		this.prefetchTasks = commandMaster.prefetchTasks;
+		this.outputFile = commandMaster.outputFile;
+		this.reorderWindow = commandMaster.reorderWindow;
 	}
 
 	private void update(CommandWorker commandWorker) {
@@ -94,6 +153,19 @@ public class Configuration {
 		this.masterHost = commandWorker.masterhost;
 		this.masterPort = commandWorker.masterport;
 		this.numWorkers = commandWorker.numWorkers;
+		this.offloadCracking = commandWorker.offloadCracking;
+		this.crackingThreads = commandWorker.crackingThreads;
+		this.hintTableDirectory = commandWorker.hintTableDirectory;
+		this.largeMessageWindow = commandWorker.largeMessageWindow;
+		this.largeMessageTransport = commandWorker.largeMessageTransport;
+		this.largeMessageLocalDelivery = commandWorker.largeMessageLocalDelivery;
+		this.largeMessageCodec = commandWorker.largeMessageCodec;
+		this.largeMessageCompressionThreshold = commandWorker.largeMessageCompressionThreshold;
+	}
+
+	private void update(CommandHintTable commandHintTable) {
+		this.hintTableDirectory = commandHintTable.hintTableDirectory;
+		this.hintChars = commandHintTable.hintChars;
 	}
 	
 	public BloomFilter generateWelcomeData() {
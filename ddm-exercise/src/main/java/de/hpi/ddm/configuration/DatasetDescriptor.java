@@ -17,6 +17,8 @@ import com.opencsv.CSVReaderBuilder;
 import com.opencsv.enums.CSVReaderNullFieldIndicator;
 import com.opencsv.exceptions.CsvValidationException;
 
+import de.hpi.ddm.actors.utils.PasswordFileReader;
+
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -82,4 +84,10 @@ public class DatasetDescriptor implements Serializable {
 		
 		return reader;
 	}
+
+	public PasswordFileReader createPasswordFileReader() throws IOException {
+		Path path = Paths.get(this.datasetPath + this.datasetName + this.datasetEnding);
+		
+		return new PasswordFileReader(path, this.charset, this.valueSeparator, this.fileHasHeader, this.valueIgnoreLeadingWhitespace, this.readerSkipDifferingLines);
+	}
 }
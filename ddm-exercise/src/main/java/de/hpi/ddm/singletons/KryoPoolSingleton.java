@@ -1,14 +1,46 @@
 package de.hpi.ddm.singletons;
 
+import java.util.concurrent.ConcurrentHashMap;
+
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
 import com.twitter.chill.KryoInstantiator;
 import com.twitter.chill.KryoPool;
+import com.twitter.chill.akka.ActorRefSerializer;
+import com.esotericsoftware.kryo.Kryo;
+import org.objenesis.strategy.StdInstantiatorStrategy;
 
 public class KryoPoolSingleton {
 
 	private static final int POOL_SIZE = 10;
+	private static final int BUFFER_SIZE = 64 * 1024; // The initial size of the pooled output buffers; they grow as needed.
 	private static final KryoPool kryo = KryoPool.withByteArrayOutputStream(POOL_SIZE, new KryoInstantiator());
-	
+	private static final ConcurrentHashMap<ActorSystem, KryoPool> systemKryos = new ConcurrentHashMap<>();
+
 	public static KryoPool get() {
 		return kryo;
 	}
+
+	/**
+	 * Get the pool of the given actor system. Its Kryo instances write ActorRefs as their paths and resolve them
+	 * against the system when reading, just like the kryo serializer that Akka uses for messages.
+	 * @param system the actor system that writes or reads the objects
+	 * @return the pool of the system, which serializes into pooled output buffers
+	 */
+	public static KryoPool get(ActorSystem system) {
+		KryoPool systemKryo = systemKryos.get(system);
+		if (systemKryo != null)
+			return systemKryo;
+
+		// The scala registrations of chill are left out, because our messages are plain Java objects.
+		KryoInstantiator instantiator = new KryoInstantiator()
+				.setInstantiatorStrategy(new Kryo.DefaultInstantiatorStrategy(new StdInstantiatorStrategy()))
+				.withRegistrar(new ActorRefSerializer((ExtendedActorSystem) system));
+		systemKryo = KryoPool.withBuffer(POOL_SIZE, instantiator, BUFFER_SIZE, -1);
+		KryoPool concurrentlyCreated = systemKryos.putIfAbsent(system, systemKryo);
+		if (concurrentlyCreated != null)
+			return concurrentlyCreated;
+		system.registerOnTermination(() -> systemKryos.remove(system));
+		return systemKryo;
+	}
 }
@@ -0,0 +1,64 @@
+package de.hpi.ddm.singletons;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import akka.actor.AbstractExtensionId;
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.actor.Extension;
+import de.hpi.ddm.structures.BloomFilter;
+
+/**
+ * Holds one copy of each welcome data payload per actor system, so that all workers of a node reference the same
+ * object instead of their own deserialized copies. The cached payloads are shared and must not be modified. Each
+ * payload stays cached while some worker of the system holds it, i.e., interned it and has not released it yet.
+ */
+public class WelcomeDataCache implements Extension {
+
+	private static final AbstractExtensionId<WelcomeDataCache> ID = new AbstractExtensionId<WelcomeDataCache>() {
+		@Override
+		public WelcomeDataCache createExtension(ExtendedActorSystem system) {
+			return new WelcomeDataCache();
+		}
+	};
+
+	private static class Entry {
+		private final BloomFilter welcomeData;
+		private int numReferences = 0;
+
+		private Entry(BloomFilter welcomeData) {
+			this.welcomeData = welcomeData;
+		}
+	}
+
+	private final ConcurrentHashMap<String, Entry> welcomeData = new ConcurrentHashMap<>();
+
+	public static WelcomeDataCache get(ActorSystem system) {
+		return ID.get(system);
+	}
+
+	/**
+	 * Get the cached copy of the payload with the given content hash, which is the given payload if there is none yet.
+	 * Every call holds the copy until a matching call of {@link #release(String)}.
+	 * @param hash the content hash of the payload
+	 * @param welcomeData the payload that was received
+	 * @return the copy of the payload that all workers of this actor system share
+	 */
+	public BloomFilter intern(String hash, BloomFilter welcomeData) {
+		Entry entry = this.welcomeData.compute(hash, (key, cached) -> {
+			if (cached == null)
+				cached = new Entry(welcomeData);
+			cached.numReferences++;
+			return cached;
+		});
+		return entry.welcomeData;
+	}
+
+	/**
+	 * Release a payload that was interned before; the last release removes it from the cache.
+	 * @param hash the content hash of the payload
+	 */
+	public void release(String hash) {
+		this.welcomeData.computeIfPresent(hash, (key, cached) -> --cached.numReferences > 0 ? cached : null);
+	}
+}
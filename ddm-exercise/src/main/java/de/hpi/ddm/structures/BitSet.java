@@ -2,6 +2,7 @@ package de.hpi.ddm.structures;
 
 import java.io.Serializable;
 import java.nio.ByteBuffer;
+import java.security.MessageDigest;
 import java.util.Arrays;
 import java.util.Random;
 
@@ -77,6 +78,23 @@ public class BitSet implements Cloneable, Serializable {
 			buffer.putLong(this.words[i]);
 	}
 	
+	/**
+	 * Update the digest with the binary form of this {@code BitSet}, which is fed in piecewise instead of being materialized as a whole.
+	 * @param digest that is updated with the words of this {@code BitSet}
+	 */
+	public void digest(MessageDigest digest) {
+		ByteBuffer buffer = ByteBuffer.allocate(8192 * BYTES_PER_WORD);
+		buffer.putInt(this.words.length);
+		for (int i = 0; i < this.words.length; i++) {
+			if (buffer.remaining() < BYTES_PER_WORD) {
+				digest.update(buffer.array(), 0, buffer.position());
+				buffer.clear();
+			}
+			buffer.putLong(this.words[i]);
+		}
+		digest.update(buffer.array(), 0, buffer.position());
+	}
+	
 	/**
 	 * Calculate the binary size in bytes of this object when being serialized into a byte array.
 	 * The byte size is a 4 byte integer to encode the number of words in this {@code BitSet} plus 8 bytes per word.
@@ -0,0 +1,176 @@
+package de.hpi.ddm.structures;
+
+import java.io.Serializable;
+
+import de.hpi.ddm.actors.utils.Util;
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+
+/**
+ * A lookup table that maps SHA-256 hint digests to the entries they have been registered for. The digests are stored
+ * sorted and flattened into one byte array, so that duplicates are adjacent. A lookup goes through an open-addressing
+ * hash table that is keyed on the first 8 bytes of the distinct digests and verifies the full digest on a hit, so it
+ * takes the same constant time for the hints of one line and for those of a whole dataset and allocates no objects.
+ */
+public class HintDictionary implements Serializable {
+
+	private static final long serialVersionUID = -1825412389162351736L;
+	private static final int KEY_LENGTH = 8;
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private byte[] digests;
+	private int[] entries;
+
+	// Built on the first lookup instead of being serialized with the digests, so that it does not enlarge the messages.
+	private transient volatile LookupTable lookupTable;
+
+	// The slots hold the first 8 bytes of a digest and its first sorted position plus one; position 0 marks an empty slot.
+	private static class LookupTable {
+		private final long[] keys;
+		private final int[] positions;
+		private final int mask;
+
+		private LookupTable(int capacity) {
+			this.keys = new long[capacity];
+			this.positions = new int[capacity];
+			this.mask = capacity - 1;
+		}
+	}
+
+	/**
+	 * FOR (DE-)SERIALIZATION ONLY!
+	 */
+	public HintDictionary() {
+	}
+
+	/**
+	 * Construct a new {@code HintDictionary} for the given digests. The entry of each digest is its index in the given array.
+	 * @param hintDigests the 32 byte SHA-256 digests of all hints that should be looked up
+	 */
+	public HintDictionary(byte[][] hintDigests) {
+		int[] order = new int[hintDigests.length];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		IntArrays.quickSort(order, (i, j) -> {
+			int comparison = compare(hintDigests[i], hintDigests[j]);
+			return comparison != 0 ? comparison : Integer.compare(i, j);
+		});
+
+		this.digests = new byte[hintDigests.length * Util.DIGEST_LENGTH];
+		this.entries = new int[hintDigests.length];
+		for (int i = 0; i < order.length; i++) {
+			System.arraycopy(hintDigests[order[i]], 0, this.digests, i * Util.DIGEST_LENGTH, Util.DIGEST_LENGTH);
+			this.entries[i] = order[i];
+		}
+	}
+
+	public int size() {
+		return this.entries.length;
+	}
+
+	/**
+	 * Find the first sorted position of the given digest.
+	 * @param digest the digest to look up
+	 * @return the first position that stores the digest or -1 if the digest is not contained
+	 */
+	public int find(byte[] digest) {
+		LookupTable lookupTable = this.lookupTable;
+		if (lookupTable == null)
+			lookupTable = this.buildLookupTable();
+		long key = key(digest, 0);
+		for (int slot = slot(key, lookupTable.mask); ; slot = (slot + 1) & lookupTable.mask) {
+			int position = lookupTable.positions[slot] - 1;
+			if (position < 0)
+				return -1;
+			// Different digests only share their first 8 bytes by chance, so the full comparison almost always succeeds.
+			if (lookupTable.keys[slot] == key && this.compareAt(position, digest) == 0)
+				return position;
+		}
+	}
+
+	/**
+	 * Test if the digest stored at the given sorted position equals the given digest; used to iterate over duplicates.
+	 * @param position a sorted position of this dictionary
+	 * @param digest the digest to compare with
+	 * @return true if the position is valid and stores the digest
+	 */
+	public boolean matches(int position, byte[] digest) {
+		return position >= 0 && position < this.entries.length && this.compareAt(position, digest) == 0;
+	}
+
+	/**
+	 * Retrieve the entry, i.e., the index in the original digest array, that is stored at the given sorted position.
+	 * @param position a sorted position of this dictionary
+	 * @return the entry of the digest at that position
+	 */
+	public int getEntry(int position) {
+		return this.entries[position];
+	}
+
+	/**
+	 * Copy the digest that is stored at the given sorted position.
+	 * @param position a sorted position of this dictionary
+	 * @param digest the 32 byte array to copy the digest into
+	 */
+	public void getDigest(int position, byte[] digest) {
+		System.arraycopy(this.digests, position * Util.DIGEST_LENGTH, digest, 0, Util.DIGEST_LENGTH);
+	}
+
+	// Several actors of one actor system may share a dictionary, so the first lookups might race to build the table.
+	private synchronized LookupTable buildLookupTable() {
+		if (this.lookupTable != null)
+			return this.lookupTable;
+		int numDistinctDigests = 0;
+		for (int position = 0; position < this.entries.length; position++)
+			if (position == 0 || this.compareAt(position, this.digests, (position - 1) * Util.DIGEST_LENGTH) != 0)
+				numDistinctDigests++;
+
+		LookupTable lookupTable = new LookupTable(HashCommon.arraySize(Math.max(1, numDistinctDigests), LOAD_FACTOR));
+		for (int position = 0; position < this.entries.length; position++) {
+			if (position > 0 && this.compareAt(position, this.digests, (position - 1) * Util.DIGEST_LENGTH) == 0)
+				continue;
+			long key = key(this.digests, position * Util.DIGEST_LENGTH);
+			int slot = slot(key, lookupTable.mask);
+			while (lookupTable.positions[slot] != 0)
+				slot = (slot + 1) & lookupTable.mask;
+			lookupTable.keys[slot] = key;
+			lookupTable.positions[slot] = position + 1;
+		}
+		this.lookupTable = lookupTable;
+		return lookupTable;
+	}
+
+	private static long key(byte[] bytes, int offset) {
+		long key = 0;
+		for (int i = 0; i < KEY_LENGTH; i++)
+			key = (key << 8) | (bytes[offset + i] & 0xff);
+		return key;
+	}
+
+	private static int slot(long key, int mask) {
+		return (int) HashCommon.mix(key) & mask;
+	}
+
+	private int compareAt(int position, byte[] digest) {
+		return this.compareAt(position, digest, 0);
+	}
+
+	private int compareAt(int position, byte[] bytes, int bytesOffset) {
+		int offset = position * Util.DIGEST_LENGTH;
+		for (int i = 0; i < Util.DIGEST_LENGTH; i++) {
+			int difference = (this.digests[offset + i] & 0xff) - (bytes[bytesOffset + i] & 0xff);
+			if (difference != 0)
+				return difference;
+		}
+		return 0;
+	}
+
+	private static int compare(byte[] digest, byte[] otherDigest) {
+		for (int i = 0; i < Util.DIGEST_LENGTH; i++) {
+			int difference = (digest[i] & 0xff) - (otherDigest[i] & 0xff);
+			if (difference != 0)
+				return difference;
+		}
+		return 0;
+	}
+}
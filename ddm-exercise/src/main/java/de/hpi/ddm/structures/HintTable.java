@@ -0,0 +1,166 @@
+package de.hpi.ddm.structures;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import de.hpi.ddm.actors.utils.Util;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+
+/**
+ * A precomputed, memory-mapped table of all hint digests of one alphabet. A hint only depends on the alphabet and its
+ * missing character, so the table can be written once with the {@value #COMMAND} command and is reused by every job on
+ * that alphabet.
+ * <p>
+ * The file {@code hints_<chars>.bin} consists of one section per missing character. A section holds one entry for each
+ * permutation of the remaining characters: the first 8 bytes of the permutation's digest as a big-endian long followed
+ * by the permutation's index as an int, see {@link Util#permutationPrefix(String, int, int)}. The entries of each section
+ * are sorted by their (signed) digest prefix, so that a lookup is a binary search on the mapped section; the full digest
+ * is verified by hashing the permutation again.
+ */
+public class HintTable {
+
+	public static final String COMMAND = "hinttable";
+
+	private static final int ENTRY_SIZE = Long.BYTES + Integer.BYTES;
+	private static final int MAX_CHARS = 12; // The sections of longer alphabets do not fit into one mapped buffer.
+
+	private static final ConcurrentHashMap<File, HintTable> openTables = new ConcurrentHashMap<>();
+
+	private final String chars;
+	private final MappedByteBuffer[] sections;
+	private final int numEntriesPerSection;
+
+	private HintTable(String chars, MappedByteBuffer[] sections, int numEntriesPerSection) {
+		this.chars = chars;
+		this.sections = sections;
+		this.numEntriesPerSection = numEntriesPerSection;
+	}
+
+	/**
+	 * Resolve the file that stores the hint table of the given alphabet.
+	 * @param directory the directory of all hint tables
+	 * @param chars the alphabet of the hints
+	 * @return the table file, which might not exist
+	 */
+	public static File file(String directory, String chars) {
+		return new File(directory, "hints_" + chars + ".bin");
+	}
+
+	/**
+	 * Open the hint table of the given alphabet. Tables are mapped only once per JVM and shared by all callers.
+	 * @param directory the directory of all hint tables
+	 * @param chars the alphabet of the hints
+	 * @return the table or null if no table has been written for the alphabet
+	 * @throws IOException if the table exists but cannot be mapped
+	 */
+	public static HintTable open(String directory, String chars) throws IOException {
+		File file = file(directory, chars);
+		HintTable hintTable = openTables.get(file);
+		if (hintTable != null || !file.isFile())
+			return hintTable;
+
+		int numEntriesPerSection = numEntriesPerSection(chars);
+		MappedByteBuffer[] sections = new MappedByteBuffer[chars.length()];
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r"); FileChannel channel = randomAccessFile.getChannel()) {
+			long sectionSize = (long) numEntriesPerSection * ENTRY_SIZE;
+			if (channel.size() != sectionSize * chars.length())
+				throw new IOException("The hint table " + file + " is incomplete.");
+			for (int i = 0; i < sections.length; i++)
+				sections[i] = channel.map(FileChannel.MapMode.READ_ONLY, i * sectionSize, sectionSize);
+		}
+		hintTable = new HintTable(chars, sections, numEntriesPerSection);
+		HintTable concurrentlyOpened = openTables.putIfAbsent(file, hintTable);
+		return concurrentlyOpened != null ? concurrentlyOpened : hintTable;
+	}
+
+	/**
+	 * Precompute the hint table of the given alphabet and write it into the given directory.
+	 * @param directory the directory of all hint tables
+	 * @param chars the alphabet of the hints
+	 * @throws IOException if the table cannot be written
+	 */
+	public static void write(String directory, String chars) throws IOException {
+		int numEntriesPerSection = numEntriesPerSection(chars);
+		File file = file(directory, chars);
+		File temporaryFile = new File(file.getPath() + ".tmp");
+		new File(directory).mkdirs();
+
+		// Only one section is kept in memory; its permutations are hashed in parallel.
+		long[] digestPrefixes = new long[numEntriesPerSection];
+		long[] permutationIndices = new long[numEntriesPerSection];
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile), 1 << 20))) {
+			for (int missingCharIndex = 0; missingCharIndex < chars.length(); missingCharIndex++) {
+				String permutedChars = Util.removeChars(chars, chars.substring(missingCharIndex, missingCharIndex + 1));
+				IntStream.range(0, numEntriesPerSection).parallel().forEach(permutationIndex -> {
+					byte[] permutation = Util.toBytes(Util.permutationPrefix(permutedChars, permutedChars.length(), permutationIndex));
+					byte[] digest = new byte[Util.DIGEST_LENGTH];
+					Util.hash(permutation, permutation.length, digest);
+					digestPrefixes[permutationIndex] = digestPrefix(digest);
+					permutationIndices[permutationIndex] = permutationIndex;
+				});
+				LongArrays.radixSort(digestPrefixes, permutationIndices);
+				for (int i = 0; i < numEntriesPerSection; i++) {
+					output.writeLong(digestPrefixes[i]);
+					output.writeInt((int) permutationIndices[i]);
+				}
+			}
+		}
+		if (!temporaryFile.renameTo(file))
+			throw new IOException("Could not move the hint table to " + file + ".");
+	}
+
+	/**
+	 * Look up the permutation of the alphabet without the character at missingCharIndex whose SHA-256 digest is the given one.
+	 * @param digest the 32 byte digest of a hint
+	 * @param missingCharIndex the index of the character that the hint misses
+	 * @return the hint in plain text or null if it does not miss that character
+	 */
+	public String find(byte[] digest, int missingCharIndex) {
+		MappedByteBuffer section = this.sections[missingCharIndex];
+		long digestPrefix = digestPrefix(digest);
+
+		int low = 0;
+		int high = this.numEntriesPerSection - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (section.getLong(middle * ENTRY_SIZE) < digestPrefix)
+				low = middle + 1;
+			else
+				high = middle - 1;
+		}
+
+		String permutedChars = null;
+		byte[] candidateDigest = new byte[Util.DIGEST_LENGTH];
+		for (int position = low; position < this.numEntriesPerSection && section.getLong(position * ENTRY_SIZE) == digestPrefix; position++) {
+			if (permutedChars == null)
+				permutedChars = Util.removeChars(this.chars, this.chars.substring(missingCharIndex, missingCharIndex + 1));
+			String permutation = Util.permutationPrefix(permutedChars, permutedChars.length(), section.getInt(position * ENTRY_SIZE + Long.BYTES));
+			byte[] permutationBytes = Util.toBytes(permutation);
+			Util.hash(permutationBytes, permutationBytes.length, candidateDigest);
+			if (Util.digestEquals(candidateDigest, digest))
+				return permutation;
+		}
+		return null;
+	}
+
+	private static int numEntriesPerSection(String chars) {
+		if (chars.length() < 1 || chars.length() > MAX_CHARS)
+			throw new IllegalArgumentException("Hint tables support alphabets of 1 to " + MAX_CHARS + " characters, but got " + chars + ".");
+		return Util.numPermutationPrefixes(chars.length() - 1, chars.length() - 1);
+	}
+
+	private static long digestPrefix(byte[] digest) {
+		long digestPrefix = 0;
+		for (int i = 0; i < Long.BYTES; i++)
+			digestPrefix = (digestPrefix << 8) | (digest[i] & 0xff);
+		return digestPrefix;
+	}
+}
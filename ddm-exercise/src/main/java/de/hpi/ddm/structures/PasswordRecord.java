@@ -0,0 +1,33 @@
+package de.hpi.ddm.structures;
+
+import java.io.Serializable;
+
+import de.hpi.ddm.actors.utils.Util;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One line of a password file without the name column, with the password and hint hashes decoded into their raw 32 byte
+ * SHA-256 digests, which are half the size of their hex strings.
+ */
+@Data @NoArgsConstructor @AllArgsConstructor
+public class PasswordRecord implements Serializable {
+
+	private static final long serialVersionUID = -6380416352436095432L;
+
+	private int lineID;
+	private String passwordChars;	// Shared by all records of a file with the same alphabet
+	private int passwordLength;
+	private byte[] passwordDigest;
+	private byte[][] hintDigests;
+
+	/**
+	 * Estimate the heap size of this record, which is dominated by its digests.
+	 * @return the approximate number of bytes that this record occupies
+	 */
+	public int estimatedSize() {
+		int digestSize = 16 + Util.DIGEST_LENGTH; // Each digest is an array with a header.
+		return 32 + 16 + 4 * this.hintDigests.length + (1 + this.hintDigests.length) * digestSize;
+	}
+}
@@ -30,6 +30,8 @@ public class MasterSystem {
 				"akka.remote.artery.canonical.hostname = \"" + c.getHost() + "\"\n" +
 				"akka.remote.artery.canonical.port = " + c.getPort() + "\n" +
 				"akka.cluster.roles = [" + MASTER_ROLE + "]\n" +
+				"cracking-dispatcher.fork-join-executor.parallelism-min = " + c.getCrackingThreads() + "\n" +
+				"cracking-dispatcher.fork-join-executor.parallelism-max = " + c.getCrackingThreads() + "\n" +
 				"akka.cluster.seed-nodes = [\"akka://" + c.getActorSystemName() + "@" + c.getHost() + ":" + c.getPort() + "\"]")
 			.withFallback(ConfigFactory.load("application"));
 		
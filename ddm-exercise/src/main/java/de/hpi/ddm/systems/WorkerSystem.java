@@ -26,6 +26,8 @@ public class WorkerSystem {
 				"akka.remote.artery.canonical.hostname = \"" + c.getHost() + "\"\n" +
 				"akka.remote.artery.canonical.port = " + c.getPort() + "\n" +
 				"akka.cluster.roles = [" + WORKER_ROLE + "]\n" +
+				"cracking-dispatcher.fork-join-executor.parallelism-min = " + c.getCrackingThreads() + "\n" +
+				"cracking-dispatcher.fork-join-executor.parallelism-max = " + c.getCrackingThreads() + "\n" +
 				"akka.cluster.seed-nodes = [\"akka://" + c.getActorSystemName() + "@" + c.getMasterHost() + ":" + c.getMasterPort() + "\"]")
 			.withFallback(ConfigFactory.load("application"));
 		
@@ -0,0 +1,103 @@
+package de.hpi.ddm.actors;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import de.hpi.ddm.actors.utils.CandidateHasher;
+import de.hpi.ddm.actors.utils.SliceTimer;
+import de.hpi.ddm.actors.utils.Util;
+import de.hpi.ddm.structures.HintDictionary;
+
+/**
+ * Measures how many candidates per second the brute force path hashes for alphabets of 2 to 10 characters: once with
+ * an odometer that hashes every candidate through Util.hash() and checks the time after each one, as the worker used to,
+ * and once with the CandidateHasher in the blocks of a SliceTimer, as the worker does now. No candidate matches, so all
+ * NUM_CANDIDATES candidates are hashed; small alphabets use longer passwords to have that many. This is not a test; run
+ * it with
+ * {@code java -cp target/classes:target/test-classes:<dependencies> de.hpi.ddm.actors.CandidateHashingBenchmark [alphabet size...]}.
+ */
+public class CandidateHashingBenchmark {
+
+	private static final int[] DEFAULT_ALPHABET_SIZES = { 2, 5, 10 };
+	private static final int MIN_PASSWORD_LENGTH = 10;
+	private static final long NUM_CANDIDATES = 5000000;
+	private static final int NUM_RUNS = 3;
+
+	public static void main(String[] args) {
+		int[] alphabetSizes = args.length == 0 ? DEFAULT_ALPHABET_SIZES : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+		HintDictionary targets = new HintDictionary(new byte[][] { Util.decodeHex(PasswordCrackingWorkerTest.passwordHash) });
+
+		// Warm up both paths.
+		perCandidate("ABCDE", MIN_PASSWORD_LENGTH, targets);
+		candidateHasher("ABCDE", MIN_PASSWORD_LENGTH, targets);
+
+		System.out.printf("%-10s %16s %16s %8s%n", "alphabet", "per candidate", "CandidateHasher", "speedup");
+		for (int alphabetSize : alphabetSizes) {
+			String passwordChars = "ABCDEFGHIJKLMNOPQRSTUVWXYZ".substring(0, alphabetSize);
+			int passwordLength = MIN_PASSWORD_LENGTH;
+			while (Util.numCombinations(alphabetSize, passwordLength) < NUM_CANDIDATES)
+				passwordLength++;
+			long perCandidateTime = Long.MAX_VALUE;
+			long candidateHasherTime = Long.MAX_VALUE;
+			for (int run = 0; run < NUM_RUNS; run++) {
+				perCandidateTime = Math.min(perCandidateTime, perCandidate(passwordChars, passwordLength, targets));
+				candidateHasherTime = Math.min(candidateHasherTime, candidateHasher(passwordChars, passwordLength, targets));
+			}
+			System.out.printf("%-10d %12.2f M/s %12.2f M/s %7.2fx%n", alphabetSize, (double) NUM_CANDIDATES / perCandidateTime,
+					(double) NUM_CANDIDATES / candidateHasherTime, (double) perCandidateTime / candidateHasherTime);
+		}
+	}
+
+	// Returns the time in microseconds.
+	private static long perCandidate(String passwordChars, int passwordLength, HintDictionary targets) {
+		long start = System.nanoTime();
+		long startTime = Instant.now().getEpochSecond();
+		byte[] characters = Util.toBytes(passwordChars);
+		byte[] combination = new byte[passwordLength];
+		int[] positions = new int[passwordLength];
+		Arrays.fill(combination, characters[0]);
+		byte[] digest = new byte[Util.DIGEST_LENGTH];
+		int numFound = 0;
+		for (long remaining = NUM_CANDIDATES; remaining > 0; remaining--) {
+			Util.hash(combination, passwordLength, digest);
+			if (targets.find(digest) >= 0)
+				numFound++;
+			if (Instant.now().getEpochSecond() - startTime > 3600)
+				break;
+			int place = passwordLength - 1;
+			while (place >= 0 && ++positions[place] == characters.length) {
+				positions[place] = 0;
+				combination[place--] = characters[0];
+			}
+			if (place >= 0)
+				combination[place] = characters[positions[place]];
+		}
+		return check(numFound, start);
+	}
+
+	private static long candidateHasher(String passwordChars, int passwordLength, HintDictionary targets) {
+		long start = System.nanoTime();
+		SliceTimer sliceTimer = new SliceTimer(1, TimeUnit.HOURS);
+		sliceTimer.startSlice();
+		CandidateHasher candidates = new CandidateHasher(passwordChars, passwordLength, 0);
+		int numFound = 0;
+		long remaining = NUM_CANDIDATES;
+		while (remaining > 0 && !candidates.isExhausted()) {
+			long remainingAfterBlock = remaining - Math.min(remaining, sliceTimer.getBlockSize());
+			for (; remaining > remainingAfterBlock && !candidates.isExhausted(); remaining -= candidates.getNumHashed())
+				if (candidates.hashNext(remaining - remainingAfterBlock, targets) >= 0)
+					numFound++;
+			if (sliceTimer.finishBlock())
+				break;
+		}
+		return check(numFound, start);
+	}
+
+	private static long check(int numFound, long start) {
+		long time = (System.nanoTime() - start) / 1000;
+		if (numFound != 0)
+			throw new IllegalStateException("Found " + numFound + " candidates that should not match.");
+		return Math.max(1, time);
+	}
+}
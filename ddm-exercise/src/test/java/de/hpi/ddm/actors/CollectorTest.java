@@ -0,0 +1,109 @@
+package de.hpi.ddm.actors;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.PoisonPill;
+import akka.testkit.javadsl.TestKit;
+import de.hpi.ddm.configuration.Configuration;
+import de.hpi.ddm.singletons.ConfigurationSingleton;
+import de.hpi.ddm.systems.MasterSystem;
+
+public class CollectorTest {
+
+	static ActorSystem system;
+
+	@Before
+	public void setUp() throws Exception {
+		final Configuration c = ConfigurationSingleton.get();
+
+		final Config config = ConfigFactory.parseString(
+				"akka.remote.artery.canonical.hostname = \"" + c.getHost() + "\"\n" +
+				"akka.remote.artery.canonical.port = " + c.getPort() + "\n" +
+				"akka.cluster.roles = [" + MasterSystem.MASTER_ROLE + "]\n" +
+				"akka.cluster.seed-nodes = [\"akka://" + c.getActorSystemName() + "@" + c.getMasterHost() + ":" + c.getMasterPort() + "\"]")
+			.withFallback(ConfigFactory.load("application"));
+
+		system = ActorSystem.create(c.getActorSystemName(), config);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestKit.shutdownActorSystem(system);
+	}
+
+	@Test
+	public void testWritingResultsInLineOrder() throws Exception {
+		// Tests if results that arrive out of order are written in line ID order, and if the written ones are on disk before the job ends.
+		File file = File.createTempFile("results", ".csv");
+		file.deleteOnExit();
+		new TestKit(system) {{
+			ActorRef collector = system.actorOf(Collector.props(file.toPath(), 10, ';'));
+			collector.tell(new Collector.CollectMessage("CCC", 3), ActorRef.noSender());
+			collector.tell(new Collector.CollectMessage("AAA", 1), ActorRef.noSender());
+
+			awaitAssert(Duration.ofSeconds(5), () -> {
+				assertEquals(Arrays.asList("ID;Password", "1;AAA"), readLines(file));
+				return null;
+			});
+
+			collector.tell(new Collector.CollectMessage("EEE", 5), ActorRef.noSender());
+			collector.tell(new Collector.CollectMessage("BBB", 2), ActorRef.noSender());
+			collector.tell(new Collector.CollectMessage("DDD", 4), ActorRef.noSender());
+			collector.tell(new Collector.PrintMessage(), ActorRef.noSender());
+			stopAndAwait(this, collector);
+
+			assertEquals(Arrays.asList("ID;Password", "1;AAA", "2;BBB", "3;CCC", "4;DDD", "5;EEE"), readLines(file));
+		}};
+	}
+
+	@Test
+	public void testReorderWindowOverflow() throws Exception {
+		// Tests if a missing line ID holds back no more results than the reorder window, and if the line is still written once it arrives.
+		File file = File.createTempFile("results", ".csv");
+		file.deleteOnExit();
+		new TestKit(system) {{
+			ActorRef collector = system.actorOf(Collector.props(file.toPath(), 2, ';'));
+			collector.tell(new Collector.CollectMessage("BBB", 2), ActorRef.noSender());
+			collector.tell(new Collector.CollectMessage("CCC", 3), ActorRef.noSender());
+			collector.tell(new Collector.CollectMessage("DDD", 4), ActorRef.noSender());
+			collector.tell(new Collector.CollectMessage("FFF", 6), ActorRef.noSender());
+			collector.tell(new Collector.CollectMessage("AAA", 1), ActorRef.noSender());
+			collector.tell(new Collector.CollectMessage("EEE", 5), ActorRef.noSender());
+			stopAndAwait(this, collector);
+
+			assertEquals(Arrays.asList("ID;Password", "2;BBB", "3;CCC", "4;DDD", "1;AAA", "5;EEE", "6;FFF"), readLines(file));
+		}};
+	}
+
+	private static List<String> readLines(File file) {
+		try {
+			return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void stopAndAwait(TestKit probe, ActorRef collector) {
+		probe.watch(collector);
+		collector.tell(PoisonPill.getInstance(), ActorRef.noSender());
+		probe.expectTerminated(collector);
+	}
+}
@@ -1,8 +1,16 @@
 package de.hpi.ddm.actors;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
 import java.time.Duration;
+import java.util.Random;
 
 import org.junit.After;
 import org.junit.Before;
@@ -16,8 +24,12 @@ import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
 import akka.testkit.javadsl.TestKit;
+import de.hpi.ddm.actors.utils.CancellationToken;
+import de.hpi.ddm.actors.utils.Util;
 import de.hpi.ddm.configuration.Configuration;
 import de.hpi.ddm.singletons.ConfigurationSingleton;
+import de.hpi.ddm.structures.HintDictionary;
+import de.hpi.ddm.structures.HintTable;
 import de.hpi.ddm.systems.MasterSystem;
 
 public class HintCrackingWorkerTest {
@@ -30,21 +42,17 @@ public class HintCrackingWorkerTest {
 
     static class TestActor extends AbstractLoggingActor {
 
-        public static Props props(ActorRef parent) {
-            return Props.create(HintCrackingWorkerTest.TestActor.class, () -> new HintCrackingWorkerTest.TestActor(parent));
+        public static Props props(ActorRef parent, Props hintCrackingWorkerProps) {
+            return Props.create(HintCrackingWorkerTest.TestActor.class, () -> new HintCrackingWorkerTest.TestActor(parent, hintCrackingWorkerProps));
         }
 
-        public TestActor(ActorRef parent) {
+        public TestActor(ActorRef parent, Props hintCrackingWorkerProps) {
             this.parent = parent;
+            this.hintCrackingWorker = this.context().actorOf(hintCrackingWorkerProps, "hintCrackingWorker");
         }
 
         ActorRef parent = null;
-        ActorRef hintCrackingWorker = this.createHintCrackingWorker(hintHashes, passwordChars);
-
-        public ActorRef createHintCrackingWorker(String[] hintHashes, String passwordChars) {
-            ActorRef worker = this.context().actorOf(HintCrackingWorker.props(hintHashes, passwordChars), "hintCrackingWorker");
-            return worker;
-        }
+        ActorRef hintCrackingWorker;
 
         @Override
         public Receive createReceive() {
@@ -79,11 +87,34 @@ public class HintCrackingWorkerTest {
         new TestKit(system) {
             {
                 within(Duration.ofSeconds(200), () -> {
-                    ActorRef testActor = system.actorOf(HintCrackingWorkerTest.TestActor.props(this.getRef()), "testActor");
-                    for(int i = 0; i < HintCrackingWorkerTest.hintsCracked.length; i++) {
-                        PasswordCrackingWorker.HintCrackedMessage expectedMessage = new PasswordCrackingWorker.HintCrackedMessage(hintChars[i], i, hintsCracked[i]);
-                        this.expectMsg(expectedMessage);
-                    }
+                    HintDictionary hintDictionary = new HintDictionary(Util.decodeHex(hintHashes));
+                    int hintIndex = new String(hintChars).indexOf(crackedHint);
+                    system.actorOf(HintCrackingWorkerTest.TestActor.props(this.getRef(), HintCrackingWorker.props(hintDictionary, passwordChars,
+                            passwordChars.indexOf(crackedHint), "", true, new CancellationToken())), "testActor");
+                    this.expectMsg(new PasswordCrackingWorker.HintCrackedMessage(crackedHint, hintIndex, hintsCracked[hintIndex]));
+
+                    // Will wait for the rest of the within duration
+                    expectNoMessage();
+                    return null;
+                });
+            }
+        };
+    }
+
+    @Test
+    public void testHintCrackingWithPrefix() {
+        // Tests if only the permutations with the given prefix are searched
+        new TestKit(system) {
+            {
+                within(Duration.ofSeconds(200), () -> {
+                    HintDictionary hintDictionary = new HintDictionary(Util.decodeHex(hintHashes));
+                    int missingCharIndex = passwordChars.indexOf(hintChars[0]);
+                    system.actorOf(HintCrackingWorkerTest.TestActor.props(this.getRef(),
+                            HintCrackingWorker.props(hintDictionary, passwordChars, missingCharIndex, "HJ")), "prefixTestActor");
+                    this.expectMsg(new PasswordCrackingWorker.HintCrackedMessage(hintChars[0], 0, hintsCracked[0]));
+
+                    system.actorOf(HintCrackingWorkerTest.TestActor.props(this.getRef(),
+                            HintCrackingWorker.props(hintDictionary, passwordChars, missingCharIndex, "JH")), "otherPrefixTestActor");
 
                     // Will wait for the rest of the within duration
                     expectNoMessage();
@@ -92,4 +123,75 @@ public class HintCrackingWorkerTest {
             }
         };
     }
+
+    @Test
+    public void testHintTableLookup() throws Exception {
+        // Tests if the hints are looked up in a precomputed hint table
+        File hintTableDirectory = Files.createTempDirectory("hints").toFile();
+        HintTable.write(hintTableDirectory.getPath(), "ABCDE");
+        ConfigurationSingleton.get().setHintTableDirectory(hintTableDirectory.getPath());
+        try {
+            new TestKit(system) {
+                {
+                    within(Duration.ofSeconds(20), () -> {
+                        HintDictionary hints = new HintDictionary(Util.decodeHex(new String[] { Util.hash("DBCA"), Util.hash("EDBA") }));
+                        system.actorOf(HintCrackingWorkerTest.TestActor.props(this.getRef(),
+                                HintCrackingWorker.props(hints, "ABCDE", 2, "", true, new CancellationToken())), "hintTableTestActor");
+                        this.expectMsg(new PasswordCrackingWorker.HintCrackedMessage('C', 1, "EDBA"));
+                        system.actorOf(HintCrackingWorkerTest.TestActor.props(this.getRef(),
+                                HintCrackingWorker.props(hints, "ABCDE", 4, "", true, new CancellationToken())), "otherHintTableTestActor");
+                        this.expectMsg(new PasswordCrackingWorker.HintCrackedMessage('E', 0, "DBCA"));
+
+                        // Will wait for the rest of the within duration
+                        expectNoMessage();
+                        return null;
+                    });
+                }
+            };
+        } finally {
+            ConfigurationSingleton.get().setHintTableDirectory("");
+            HintTable.file(hintTableDirectory.getPath(), "ABCDE").delete();
+            hintTableDirectory.delete();
+        }
+    }
+
+    @Test
+    public void testHintDictionaryLookup() throws Exception {
+        // Tests if every digest is found at a position that holds all of its entries, also in a serialized copy, and others are not.
+        Random random = new Random(42);
+        byte[][] digests = new byte[100000][];
+        for (int i = 0; i < digests.length; i++) {
+            if (i % 10 == 9) {
+                digests[i] = digests[random.nextInt(i)]; // Some lines share a hint.
+            } else {
+                digests[i] = new byte[Util.DIGEST_LENGTH];
+                random.nextBytes(digests[i]);
+            }
+        }
+        HintDictionary hintDictionary = new HintDictionary(digests);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(hintDictionary);
+        }
+        HintDictionary copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (HintDictionary) in.readObject();
+        }
+
+        for (HintDictionary dictionary : new HintDictionary[] { hintDictionary, copy }) {
+            for (int i = 0; i < digests.length; i++) {
+                boolean found = false;
+                for (int position = dictionary.find(digests[i]); dictionary.matches(position, digests[i]); position++) {
+                    found |= dictionary.getEntry(position) == i;
+                }
+                assertTrue(found);
+            }
+            byte[] otherDigest = new byte[Util.DIGEST_LENGTH];
+            for (int i = 0; i < 1000; i++) {
+                random.nextBytes(otherDigest);
+                assertEquals(-1, dictionary.find(otherDigest));
+            }
+        }
+    }
 }
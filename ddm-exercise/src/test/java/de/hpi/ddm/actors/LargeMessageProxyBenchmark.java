@@ -0,0 +1,96 @@
+package de.hpi.ddm.actors;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import akka.actor.ActorIdentity;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.actor.Identify;
+import akka.testkit.javadsl.TestKit;
+import de.hpi.ddm.singletons.ConfigurationSingleton;
+
+/**
+ * Measures how long the large message proxies take to transfer payloads of 1 to 500 MB with each transport. The sending
+ * and the receiving proxy live in two actor systems of this JVM that talk through Artery TCP, so every chunk is really
+ * serialized and sent. This is not a test; run it with enough heap for the largest payload, e.g.
+ * {@code java -Xmx5g -cp target/classes:target/test-classes:<dependencies> de.hpi.ddm.actors.LargeMessageProxyBenchmark [MB...]}.
+ */
+public class LargeMessageProxyBenchmark {
+
+	private static final int[] DEFAULT_PAYLOAD_SIZES = { 1, 10, 100, 500 }; // In MB.
+	private static final int NUM_RUNS = 3;
+	private static final Duration TIMEOUT = Duration.ofMinutes(10);
+
+	public static void main(String[] args) {
+		int[] payloadSizes = args.length == 0 ? DEFAULT_PAYLOAD_SIZES : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+
+		System.out.printf("%-10s %10s %12s %12s%n", "transport", "size [MB]", "time [ms]", "MB/s");
+		for (String transport : new String[] { LargeMessageProxy.CHUNK_TRANSPORT, LargeMessageProxy.STREAM_TRANSPORT }) {
+			ConfigurationSingleton.get().setLargeMessageTransport(transport);
+			ActorSystem senderSystem = createSystem("sender", 7890);
+			ActorSystem receiverSystem = createSystem("receiver", 7891);
+			try {
+				TestKit senderProbe = new TestKit(senderSystem);
+				TestKit receiverProbe = new TestKit(receiverSystem);
+				ActorRef sender = senderSystem.actorOf(LargeMessageProxyTest.TestActor.props(senderProbe.getRef()), "sender");
+				ActorRef receiver = resolveRemotely(senderProbe, receiverSystem,
+						receiverSystem.actorOf(LargeMessageProxyTest.TestActor.props(receiverProbe.getRef()), "receiver"));
+
+				// Warm up the serializers and connections.
+				transfer(sender, receiver, senderProbe, receiverProbe, 1);
+				for (int payloadSize : payloadSizes) {
+					long time = Long.MAX_VALUE;
+					for (int run = 0; run < NUM_RUNS; run++)
+						time = Math.min(time, transfer(sender, receiver, senderProbe, receiverProbe, payloadSize));
+					System.out.printf("%-10s %10d %12d %12.1f%n", transport, payloadSize, time, payloadSize * 1000.0 / Math.max(1, time));
+				}
+			} finally {
+				TestKit.shutdownActorSystem(senderSystem);
+				TestKit.shutdownActorSystem(receiverSystem);
+			}
+		}
+	}
+
+	// Returns the time of one transfer in milliseconds.
+	private static long transfer(ActorRef sender, ActorRef receiver, TestKit senderProbe, TestKit receiverProbe, int payloadSize) {
+		byte[] payload = new byte[payloadSize * 1024 * 1024];
+		new Random(payloadSize).nextBytes(payload);
+
+		long start = System.nanoTime();
+		sender.tell(new LargeMessageProxy.LargeMessage<>(payload, receiver), senderProbe.getRef());
+		byte[] received = receiverProbe.expectMsgClass(TIMEOUT, byte[].class);
+		long time = (System.nanoTime() - start) / 1000000;
+
+		if (received.length != payload.length)
+			throw new IllegalStateException("Received " + received.length + " instead of " + payload.length + " bytes.");
+		return time;
+	}
+
+	private static ActorSystem createSystem(String name, int port) {
+		Config config = ConfigFactory.parseString(
+				"akka.actor.provider = remote\n" +
+				"akka.extensions = []\n" +
+				"akka.loglevel = WARNING\n" +
+				"akka.remote.artery.canonical.hostname = \"127.0.0.1\"\n" +
+				"akka.remote.artery.canonical.port = " + port)
+			.withFallback(ConfigFactory.load("application"));
+		return ActorSystem.create(name, config);
+	}
+
+	// The sending proxy must address the receiver by its remote path; a local reference of the other system would not leave the JVM.
+	private static ActorRef resolveRemotely(TestKit senderProbe, ActorSystem receiverSystem, ActorRef receiver) {
+		String remotePath = receiver.path().toStringWithAddress(((ExtendedActorSystem) receiverSystem).provider().getDefaultAddress());
+		senderProbe.getSystem().actorSelection(remotePath).tell(new Identify(remotePath), senderProbe.getRef());
+		ActorRef remoteReceiver = senderProbe.expectMsgClass(Duration.ofSeconds(10), ActorIdentity.class).getActorRef().get();
+
+		// Make sure that the receiver has created its proxy.
+		LargeMessageProxyTest.awaitStart(senderProbe, remoteReceiver);
+		return remoteReceiver;
+	}
+}
@@ -1,8 +1,10 @@
 package de.hpi.ddm.actors;
 
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.time.Duration;
+import java.util.Arrays;
 
 import org.junit.After;
 import org.junit.Before;
@@ -12,11 +14,14 @@ import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 
 import akka.actor.AbstractLoggingActor;
+import akka.actor.Identify;
+import akka.actor.ActorIdentity;
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
 import akka.testkit.javadsl.TestKit;
 import de.hpi.ddm.configuration.Configuration;
+import de.hpi.ddm.singletons.KryoPoolSingleton;
 import de.hpi.ddm.singletons.ConfigurationSingleton;
 import de.hpi.ddm.systems.MasterSystem;
 
@@ -57,12 +62,21 @@ public class LargeMessageProxyTest {
 				"akka.cluster.seed-nodes = [\"akka://" + c.getActorSystemName() + "@" + c.getMasterHost() + ":" + c.getMasterPort() + "\"]")
 			.withFallback(ConfigFactory.load("application"));
 		
+		// Sender and receiver share this actor system, but the tests should cover the transfer of serialized messages.
+		c.setLargeMessageLocalDelivery(false);
 		system = ActorSystem.create(c.getActorSystemName(), config);
 	}
 
 	@After
 	public void tearDown() throws Exception {
 		TestKit.shutdownActorSystem(system);
+		ConfigurationSingleton.get().setLargeMessageLocalDelivery(true);
+	}
+
+	// The receiver creates its proxy on start, which must have happened before the first chunk arrives.
+	static void awaitStart(TestKit testKit, ActorRef receiver) {
+		receiver.tell(new Identify(receiver), testKit.getRef());
+		testKit.expectMsgClass(ActorIdentity.class);
 	}
 
 	@Test
@@ -72,6 +86,7 @@ public class LargeMessageProxyTest {
 			{
 				ActorRef sender = system.actorOf(TestActor.props(this.getRef()), "sender");
 				ActorRef receiver = system.actorOf(TestActor.props(this.getRef()), "receiver");
+				awaitStart(this, receiver);
 				
 				within(Duration.ofSeconds(1), () -> {
 					// Test if a small message gets passed from one proxy to the other
@@ -97,6 +112,7 @@ public class LargeMessageProxyTest {
 			{
 				ActorRef sender = system.actorOf(TestActor.props(this.getRef()), "sender");
 				ActorRef receiver = system.actorOf(TestActor.props(this.getRef()), "receiver");
+				awaitStart(this, receiver);
 				
 				within(Duration.ofSeconds(2), () -> {
 					// Test if a large message gets passed from one proxy to the other
@@ -117,4 +133,181 @@ public class LargeMessageProxyTest {
 			}
 		};
 	}
-}
+
+	@Test
+	public void testActorRefMessageSending() {
+		// Tests if ActorRefs inside a message survive the kryo serialization of the proxy.
+		new TestKit(system) {
+			{
+				ActorRef sender = system.actorOf(TestActor.props(this.getRef()), "sender");
+				ActorRef receiver = system.actorOf(TestActor.props(this.getRef()), "receiver");
+				
+				awaitStart(this, receiver);
+				
+				within(Duration.ofSeconds(2), () -> {
+					Master.HintTaskCompletedMessage completedMessage = new Master.HintTaskCompletedMessage(42, sender);
+					LargeMessageProxy.LargeMessage<Master.HintTaskCompletedMessage> largeMessage = new LargeMessageProxy.LargeMessage<>(completedMessage, receiver);
+					
+					sender.tell(largeMessage, this.getRef());
+					this.expectMsg(completedMessage);
+					assertTrue(this.getLastSender().equals(receiver));
+					return null;
+				});
+			}
+		};
+	}
+
+	@Test
+	public void testUnorderedAndDuplicateChunks() {
+		// Tests if the receiving proxy reassembles chunks in any order, acknowledges them cumulatively and delivers the message only once.
+		new TestKit(system) {
+			{
+				ActorRef receiver = system.actorOf(TestActor.props(this.getRef()), "receiver");
+				awaitStart(this, receiver);
+				system.actorSelection(receiver.path().child(LargeMessageProxy.DEFAULT_NAME)).tell(new Identify(receiver), this.getRef());
+				ActorRef receiverProxy = this.expectMsgClass(ActorIdentity.class).getActorRef().get();
+				
+				String message = "Hello, this message arrives in three chunks!";
+				byte[] bytes = KryoPoolSingleton.get(system).toBytesWithClass(message);
+				int[] chunkEnds = { bytes.length / 3, 2 * bytes.length / 3, bytes.length };
+				LargeMessageProxy.BytesPartMessage[] chunks = new LargeMessageProxy.BytesPartMessage[3];
+				for (int i = 0; i < 3; i++)
+					chunks[i] = new LargeMessageProxy.BytesPartMessage(Arrays.copyOfRange(bytes, i == 0 ? 0 : chunkEnds[i - 1], chunkEnds[i]), 7, bytes.length, LargeMessageProxy.NO_CODEC, bytes.length, 3, i, i == 0 ? 0 : chunkEnds[i - 1], this.getRef(), receiver, this.getRef());
+				
+				within(Duration.ofSeconds(2), () -> {
+					receiverProxy.tell(chunks[2], this.getRef());
+					this.expectMsg(new LargeMessageProxy.ReceivedBytesPartMessage(7, 0, receiverProxy));
+					receiverProxy.tell(chunks[0], this.getRef());
+					this.expectMsg(new LargeMessageProxy.ReceivedBytesPartMessage(7, 1, receiverProxy));
+					receiverProxy.tell(chunks[0], this.getRef());
+					this.expectMsg(new LargeMessageProxy.ReceivedBytesPartMessage(7, 1, receiverProxy));
+					receiverProxy.tell(chunks[1], this.getRef());
+					this.expectMsgAllOf(message, new LargeMessageProxy.ReceivedBytesPartMessage(7, 3, receiverProxy));
+					
+					// A late duplicate is acknowledged again, but not delivered again.
+					receiverProxy.tell(chunks[2], this.getRef());
+					this.expectMsg(new LargeMessageProxy.ReceivedBytesPartMessage(7, 3, receiverProxy));
+					expectNoMessage();
+					return null;
+				});
+			}
+		};
+	}
+
+	@Test
+	public void testStreamedMessageSending() {
+		// Tests if a large message also arrives if the proxies stream it through a SourceRef.
+		ConfigurationSingleton.get().setLargeMessageTransport(LargeMessageProxy.STREAM_TRANSPORT);
+		try {
+			new TestKit(system) {
+				{
+					ActorRef sender = system.actorOf(TestActor.props(this.getRef()), "sender");
+					ActorRef receiver = system.actorOf(TestActor.props(this.getRef()), "receiver");
+					awaitStart(this, receiver);
+					
+					within(Duration.ofSeconds(2), () -> {
+						StringBuffer longMessageBuffer = new StringBuffer("Hello, this is a String message with a very large payload!");
+						for (int i = 0; i < 100000; i++)
+							longMessageBuffer.append("<content>");
+						String longMessage = longMessageBuffer.toString();
+						LargeMessageProxy.LargeMessage<String> longStringMessage = new LargeMessageProxy.LargeMessage<String>(longMessage, receiver);
+						
+						sender.tell(longStringMessage, this.getRef());
+						this.expectMsg(longMessage);
+						assertTrue(this.getLastSender().equals(receiver));
+						
+						expectNoMessage();
+						return null;
+					});
+				}
+			};
+		} finally {
+			ConfigurationSingleton.get().setLargeMessageTransport(LargeMessageProxy.CHUNK_TRANSPORT);
+		}
+	}
+
+	@Test
+	public void testCompressedMessageSending() {
+		// Tests if a large message arrives intact if the proxies deflate it.
+		ConfigurationSingleton.get().setLargeMessageCodec(LargeMessageProxy.DEFLATE_CODEC);
+		try {
+			new TestKit(system) {
+				{
+					ActorRef sender = system.actorOf(TestActor.props(this.getRef()), "sender");
+					ActorRef receiver = system.actorOf(TestActor.props(this.getRef()), "receiver");
+					awaitStart(this, receiver);
+					
+					within(Duration.ofSeconds(2), () -> {
+						StringBuffer longMessageBuffer = new StringBuffer("Hello, this is a String message with a very large payload!");
+						for (int i = 0; i < 100000; i++)
+							longMessageBuffer.append("<content>");
+						String longMessage = longMessageBuffer.toString();
+						LargeMessageProxy.LargeMessage<String> longStringMessage = new LargeMessageProxy.LargeMessage<String>(longMessage, receiver);
+						
+						sender.tell(longStringMessage, this.getRef());
+						this.expectMsg(longMessage);
+						assertTrue(this.getLastSender().equals(receiver));
+						
+						expectNoMessage();
+						return null;
+					});
+				}
+			};
+		} finally {
+			ConfigurationSingleton.get().setLargeMessageCodec(LargeMessageProxy.NO_CODEC);
+		}
+	}
+
+	@Test
+	public void testControlMessageOvertakesBulkTransfer() {
+		// Tests if a small message sent after a large one does not wait until the large one is through.
+		ConfigurationSingleton.get().setLargeMessageWindow(1);
+		try {
+			new TestKit(system) {
+				{
+					ActorRef sender = system.actorOf(TestActor.props(this.getRef()), "sender");
+					ActorRef receiver = system.actorOf(TestActor.props(this.getRef()), "receiver");
+					awaitStart(this, receiver);
+					
+					within(Duration.ofSeconds(2), () -> {
+						StringBuffer longMessageBuffer = new StringBuffer("Hello, this is a String message with a very large payload!");
+						for (int i = 0; i < 100000; i++)
+							longMessageBuffer.append("<content>");
+						String longMessage = longMessageBuffer.toString();
+						String shortMessage = "Hello, this is a short message!";
+						
+						sender.tell(new LargeMessageProxy.LargeMessage<String>(longMessage, receiver), this.getRef());
+						sender.tell(new LargeMessageProxy.LargeMessage<String>(shortMessage, receiver), this.getRef());
+						this.expectMsg(shortMessage);
+						this.expectMsg(longMessage);
+						
+						expectNoMessage();
+						return null;
+					});
+				}
+			};
+		} finally {
+			ConfigurationSingleton.get().setLargeMessageWindow(8);
+		}
+	}
+
+	@Test
+	public void testLocalDelivery() {
+		// Tests if a receiver in the same actor system gets the message object itself.
+		ConfigurationSingleton.get().setLargeMessageLocalDelivery(true);
+		new TestKit(system) {
+			{
+				ActorRef sender = system.actorOf(TestActor.props(this.getRef()), "sender");
+				ActorRef receiver = system.actorOf(TestActor.props(this.getRef()), "receiver");
+				
+				within(Duration.ofSeconds(1), () -> {
+					int[] payload = new int[] { 1, 2, 3 };
+					sender.tell(new LargeMessageProxy.LargeMessage<>(payload, receiver), this.getRef());
+					assertSame(payload, this.expectMsgClass(int[].class));
+					assertTrue(this.getLastSender().equals(receiver));
+					return null;
+				});
+			}
+		};
+	}
+}
\ No newline at end of file
@@ -0,0 +1,256 @@
+package de.hpi.ddm.actors;
+
+import akka.actor.AbstractLoggingActor;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.actor.Status;
+import akka.testkit.javadsl.TestKit;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import de.hpi.ddm.actors.utils.Util;
+import de.hpi.ddm.configuration.Configuration;
+import de.hpi.ddm.singletons.ConfigurationSingleton;
+import de.hpi.ddm.structures.BloomFilter;
+import de.hpi.ddm.structures.HintTable;
+import de.hpi.ddm.structures.PasswordRecord;
+import de.hpi.ddm.systems.MasterSystem;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class MasterTest {
+    static ActorSystem system;
+
+    // Takes the master's place for the workers of this actor system, so that the test learns when they have registered.
+    static class RegistrationListener extends AbstractLoggingActor {
+
+        public static Props props(ActorRef master, ActorRef listener) {
+            return Props.create(MasterTest.RegistrationListener.class, () -> new MasterTest.RegistrationListener(master, listener));
+        }
+
+        public RegistrationListener(ActorRef master, ActorRef listener) {
+            this.master = master;
+            this.listener = listener;
+        }
+
+        ActorRef master;
+        ActorRef listener;
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                    .match(Object.class, message -> {
+                        this.master.forward(message, this.context());
+                        if (message instanceof Master.RegistrationMessage)
+                            this.listener.tell(message, this.self());
+                    })
+                    .build();
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        final Configuration c = ConfigurationSingleton.get();
+
+        final Config config = ConfigFactory.parseString(
+                "akka.remote.artery.canonical.hostname = \"" + c.getHost() + "\"\n" +
+                        "akka.remote.artery.canonical.port = " + c.getPort() + "\n" +
+                        "akka.cluster.roles = [" + MasterSystem.MASTER_ROLE + "]\n" +
+                        "akka.cluster.seed-nodes = [\"akka://" + c.getActorSystemName() + "@" + c.getMasterHost() + ":" + c.getMasterPort() + "\"]")
+                .withFallback(ConfigFactory.load("application"));
+
+        system = ActorSystem.create(c.getActorSystemName(), config);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestKit.shutdownActorSystem(system);
+    }
+
+    // A worker that the test plays; the welcome data does not matter for the tests.
+    private static TestKit createWorker() {
+        TestKit worker = new TestKit(system);
+        worker.ignoreMsg(message -> message instanceof PasswordCrackingWorker.WelcomeMessage || message instanceof PasswordCrackingWorker.RelayWelcomeMessage);
+        return worker;
+    }
+
+    private static PasswordRecord record(int lineID, String passwordChars, int passwordLength, String... hints) {
+        String[] hintHashes = Arrays.stream(hints).map(Util::hash).toArray(String[]::new);
+        return new PasswordRecord(lineID, passwordChars, passwordLength, Util.decodeHex(Util.hash("password" + lineID)), Util.decodeHex(hintHashes));
+    }
+
+    @Test
+    public void testReadAheadTarget() {
+        // Tests if the read-ahead follows the workers and the smoothed rate within the memory limit, but never drops below one batch.
+        assertEquals(50, Master.readAheadTarget(50, 2, 1, 0, 64L << 20, 100));
+        assertEquals(200, Master.readAheadTarget(50, 100, 1, 0, 64L << 20, 100));
+        assertEquals(2000, Master.readAheadTarget(50, 2, 1, 1000, 64L << 20, 100));
+        assertEquals(1024, Master.readAheadTarget(50, 2, 1, 1000, 1L << 20, 1024));
+        assertEquals(50, Master.readAheadTarget(50, 2, 1, 1000, 1L << 20, 1 << 20));
+
+        assertEquals(100, Master.smoothedRate(0, 100), 0);
+        assertEquals(125, Master.smoothedRate(100, 200), 0);
+    }
+
+    @Test
+    public void testSharedHintDictionary() {
+        // Tests if every worker gets the shared dictionary once and if the hint entries it reports are mapped back to their lines.
+        ConfigurationSingleton.get().setSharedHintDictionary(true);
+        ConfigurationSingleton.get().setPrefetchTasks(0);
+        try {
+            new TestKit(system) {
+                {   TestKit reader = new TestKit(system);
+                    TestKit collector = new TestKit(system);
+                    ActorRef master = system.actorOf(Master.props(reader.getRef(), collector.getRef(), new BloomFilter(1024)), Master.DEFAULT_NAME);
+                    TestKit worker = createWorker();
+                    TestKit otherWorker = createWorker();
+                    TestKit lateWorker = createWorker();
+
+                    within(Duration.ofSeconds(10), () -> {
+                        worker.send(master, new Master.RegistrationMessage());
+                        otherWorker.send(master, new Master.RegistrationMessage());
+                        master.tell(new Master.StartMessage(), this.getRef());
+
+                        // Line 1 has the hint entry 0 and line 2 the entries 1 and 2; fewer lines than requested end the file.
+                        reader.expectMsgClass(Reader.ReadMessage.class);
+                        reader.reply(new Master.BatchMessage(Arrays.asList(record(1, "ABC", 2, "AC"), record(2, "ABC", 2, "AC", "BA"))));
+
+                        // Each of the 3 missing characters is split by 2 prefixes.
+                        worker.expectMsgClass(PasswordCrackingWorker.HintDictionaryMessage.class);
+                        otherWorker.expectMsgClass(PasswordCrackingWorker.HintDictionaryMessage.class);
+                        int taskID = worker.expectMsgClass(PasswordCrackingWorker.AssignTaskMessage.class).getTaskID();
+                        int otherTaskID = otherWorker.expectMsgClass(PasswordCrackingWorker.AssignTaskMessage.class).getTaskID();
+                        lateWorker.send(master, new Master.RegistrationMessage());
+                        lateWorker.expectMsgClass(PasswordCrackingWorker.HintDictionaryMessage.class);
+                        int lateTaskID = lateWorker.expectMsgClass(PasswordCrackingWorker.AssignTaskMessage.class).getTaskID();
+
+                        // Entry 2 is the second hint of line 2; entries 0 and 1 complete both lines, so the hint tasks are cancelled.
+                        master.tell(new Master.HintsCrackedMessage('C', new int[] { 2 }, worker.getRef()), worker.getRef());
+                        master.tell(new Master.HintsCrackedMessage('B', new int[] { 0, 1 }, worker.getRef()), worker.getRef());
+                        // Each worker is told which of its tasks are cancelled.
+                        worker.expectMsg(new PasswordCrackingWorker.CancelHintsMessage(0, PasswordCrackingWorker.ALL_MISSING_CHARS, new int[] { taskID }));
+                        otherWorker.expectMsg(new PasswordCrackingWorker.CancelHintsMessage(0, PasswordCrackingWorker.ALL_MISSING_CHARS, new int[] { otherTaskID }));
+                        lateWorker.expectMsg(new PasswordCrackingWorker.CancelHintsMessage(0, PasswordCrackingWorker.ALL_MISSING_CHARS, new int[] { lateTaskID }));
+
+                        // Line 1 misses only "B" and line 2 misses "B" and "C".
+                        master.tell(new Master.HintTaskCompletedMessage(taskID, worker.getRef()), worker.getRef());
+                        PasswordCrackingWorker.TaskCrackPasswordRangeMessage range = (PasswordCrackingWorker.TaskCrackPasswordRangeMessage)
+                                worker.expectMsgClass(PasswordCrackingWorker.AssignTaskMessage.class).getTask();
+                        assertArrayEquals(new int[] { 1 }, range.getLineIDs());
+                        assertEquals("AC", range.getPasswordChars());
+                        master.tell(new Master.HintTaskCompletedMessage(otherTaskID, otherWorker.getRef()), otherWorker.getRef());
+                        range = (PasswordCrackingWorker.TaskCrackPasswordRangeMessage)
+                                otherWorker.expectMsgClass(PasswordCrackingWorker.AssignTaskMessage.class).getTask();
+                        assertArrayEquals(new int[] { 2 }, range.getLineIDs());
+                        assertEquals("A", range.getPasswordChars());
+                        master.tell(new Master.HintTaskCompletedMessage(lateTaskID, lateWorker.getRef()), lateWorker.getRef());
+
+                        // No worker gets the dictionary a second time.
+                        worker.expectNoMessage(Duration.ofMillis(500));
+                        otherWorker.expectNoMessage(Duration.ofMillis(500));
+                        lateWorker.expectNoMessage(Duration.ofMillis(500));
+                        return null;
+                    });
+                }
+            };
+        } finally {
+            ConfigurationSingleton.get().setSharedHintDictionary(false);
+            ConfigurationSingleton.get().setPrefetchTasks(1);
+        }
+    }
+
+    @Test
+    public void testHintTableUnits() throws Exception {
+        // Tests if a line whose alphabet has a hint table gets one hint unit per missing character instead of one per prefix.
+        File hintTableDirectory = Files.createTempDirectory("hints").toFile();
+        HintTable.write(hintTableDirectory.getPath(), "ABC");
+        ConfigurationSingleton.get().setHintTableDirectory(hintTableDirectory.getPath());
+        try {
+            new TestKit(system) {
+                {   TestKit reader = new TestKit(system);
+                    TestKit collector = new TestKit(system);
+                    ActorRef master = system.actorOf(Master.props(reader.getRef(), collector.getRef(), new BloomFilter(1024)), Master.DEFAULT_NAME);
+                    TestKit worker = createWorker();
+
+                    within(Duration.ofSeconds(10), () -> {
+                        worker.send(master, new Master.RegistrationMessage());
+                        master.tell(new Master.StartMessage(), this.getRef());
+                        reader.expectMsgClass(Reader.ReadMessage.class);
+                        reader.reply(new Master.BatchMessage(Arrays.asList(record(1, "ABC", 2, "AC"))));
+
+                        // The hint units are followed by the password ranges once all of them have completed.
+                        List<Integer> missingCharIndices = new ArrayList<>();
+                        while (true) {
+                            PasswordCrackingWorker.AssignTaskMessage assignment = worker.expectMsgClass(PasswordCrackingWorker.AssignTaskMessage.class);
+                            if (!(assignment.getTask() instanceof PasswordCrackingWorker.TaskCrackHintsMessage)) {
+                                break;
+                            }
+                            PasswordCrackingWorker.TaskCrackHintsMessage unit = (PasswordCrackingWorker.TaskCrackHintsMessage) assignment.getTask();
+                            assertEquals("", unit.getPrefix());
+                            missingCharIndices.add(unit.getMissingCharIndex());
+                            master.tell(new Master.HintTaskCompletedMessage(assignment.getTaskID(), worker.getRef()), worker.getRef());
+                        }
+                        assertEquals(Arrays.asList(0, 1, 2), missingCharIndices);
+                        return null;
+                    });
+                }
+            };
+        } finally {
+            ConfigurationSingleton.get().setHintTableDirectory("");
+            HintTable.file(hintTableDirectory.getPath(), "ABC").delete();
+            hintTableDirectory.delete();
+        }
+    }
+
+    @Test
+    public void testFailedSliceRescheduling() {
+        // Tests if the tasks of a worker whose slice failed are assigned to another worker.
+        ConfigurationSingleton.get().setPasswordRangeSize(1000000000); // The worker must not finish its first range before it fails.
+        try {
+            new TestKit(system) {
+                {   TestKit reader = new TestKit(system);
+                    TestKit collector = new TestKit(system);
+                    ActorRef master = system.actorOf(Master.props(reader.getRef(), collector.getRef(), new BloomFilter(1024)), "crackingMaster");
+                    system.actorOf(MasterTest.RegistrationListener.props(master, this.getRef()), Master.DEFAULT_NAME);
+
+                    ActorRef passwordCrackingWorker = system.actorOf(PasswordCrackingWorker.props(), "passwordCrackingWorker");
+                    this.watch(passwordCrackingWorker);
+
+                    within(Duration.ofSeconds(20), () -> {
+                        this.expectMsg(new Master.RegistrationMessage());
+                        master.tell(new Master.StartMessage(), this.getRef());
+
+                        // A line without hints is split into password ranges right away; the worker gets the first ones.
+                        reader.expectMsgClass(Reader.ReadMessage.class);
+                        reader.reply(new Master.BatchMessage(Arrays.asList(record(1, "ABCDEFGHIJK", 10))));
+
+                        // Fails like a slice on the cracking dispatcher; the batch is ahead of the worker's termination at the master.
+                        passwordCrackingWorker.tell(new Status.Failure(new IllegalStateException("Failed on purpose.")), ActorRef.noSender());
+                        this.expectTerminated(passwordCrackingWorker);
+
+                        TestKit worker = createWorker();
+                        worker.send(master, new Master.RegistrationMessage());
+                        PasswordCrackingWorker.TaskCrackPasswordRangeMessage range = (PasswordCrackingWorker.TaskCrackPasswordRangeMessage)
+                                worker.expectMsgClass(PasswordCrackingWorker.AssignTaskMessage.class).getTask();
+                        assertArrayEquals(new int[] { 1 }, range.getLineIDs());
+                        assertEquals(0, range.getRangeStart());
+                        return null;
+                    });
+                }
+            };
+        } finally {
+            ConfigurationSingleton.get().setPasswordRangeSize(1000000);
+        }
+    }
+}
@@ -7,13 +7,22 @@ import akka.actor.Props;
 import akka.testkit.javadsl.TestKit;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
+import de.hpi.ddm.actors.utils.CandidateHasher;
+import de.hpi.ddm.actors.utils.Util;
 import de.hpi.ddm.configuration.Configuration;
 import de.hpi.ddm.singletons.ConfigurationSingleton;
+import de.hpi.ddm.singletons.WelcomeDataCache;
+import de.hpi.ddm.structures.BloomFilter;
+import de.hpi.ddm.structures.HintDictionary;
 import de.hpi.ddm.systems.MasterSystem;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
 import java.time.Duration;
 
 public class PasswordCrackingWorkerTest {
@@ -70,21 +79,294 @@ public class PasswordCrackingWorkerTest {
 
     @Test
     public void testPasswordCracking() {
-        // Tests if a hint is cracked correctly.
+        // Tests if the hint tasks of a line report its hints and if its reduced password space then contains the password.
+        new TestKit(system) {
+            {   ActorRef testActor = system.actorOf(PasswordCrackingWorkerTest.TestActor.props(this.getRef()), Master.DEFAULT_NAME);
+
+                ActorRef passwordCrackingWorker = system.actorOf(PasswordCrackingWorker.props(), "passwordCrackingWorker");
+
+                within(Duration.ofSeconds(600), () -> {
+
+                    this.expectMsg(new Master.RegistrationMessage());
+
+                    // One task per missing character; the i-th hint misses the i-th of the characters that have a hint.
+                    for (int missingCharIndex = 0; missingCharIndex < passwordChars.length(); missingCharIndex++) {
+                        passwordCrackingWorker.tell(new PasswordCrackingWorker.AssignTaskMessage(missingCharIndex,
+                                new PasswordCrackingWorker.TaskCrackHintsMessage(passwordChars, missingCharIndex, "", 0, Util.decodeHex(hintHashs))), testActor);
+                    }
+                    String reducedPasswordChars = "";
+                    for (int missingCharIndex = 0, hintIndex = 0; missingCharIndex < passwordChars.length(); missingCharIndex++) {
+                        char missingChar = passwordChars.charAt(missingCharIndex);
+                        if (missingChar == 'F' || missingChar == 'G') {
+                            reducedPasswordChars += missingChar;
+                        } else {
+                            this.expectMsg(new Master.HintsCrackedMessage(missingChar, new int[] { hintIndex++ }, passwordCrackingWorker));
+                        }
+                        this.expectMsg(new Master.HintTaskCompletedMessage(missingCharIndex, passwordCrackingWorker));
+                    }
+
+                    passwordCrackingWorker.tell(new PasswordCrackingWorker.TaskCrackPasswordRangeMessage(new int[] { lineID }, reducedPasswordChars, passwordLength,
+                            new byte[][] { Util.decodeHex(passwordHash) }, 0, Util.numCombinations(reducedPasswordChars.length(), passwordLength)), testActor);
+                    this.expectMsg(new Master.PasswordRangeCrackedMessage(PasswordCrackingWorker.NO_TASK_ID, new int[] { lineID },
+                            new String[] { PasswordCrackingWorkerTest.crackedPassword }, passwordCrackingWorker));
+
+                    // Will wait for the rest of the within duration
+                    expectNoMessage();
+                    return null;
+                });
+            }
+        };
+    }
+
+    @Test
+    public void testPasswordRangeCracking() {
+        // Tests if only the range that contains the password reports it.
+        new TestKit(system) {
+            {   ActorRef testActor = system.actorOf(PasswordCrackingWorkerTest.TestActor.props(this.getRef()), Master.DEFAULT_NAME);
+
+                ActorRef passwordCrackingWorker = system.actorOf(PasswordCrackingWorker.props(), "passwordCrackingWorker");
+
+                within(Duration.ofSeconds(60), () -> {
+
+                    // The worker reports its results to the master it registered with.
+                    this.expectMsg(new Master.RegistrationMessage());
+
+                    // The hints of the line reduce the password chars to "FG"; "GGGFGFFFFG" is combination 0b1110100001 = 929.
+                    passwordCrackingWorker.tell(new PasswordCrackingWorker.TaskCrackPasswordRangeMessage(new int[] { lineID }, "FG", passwordLength, new byte[][] { Util.decodeHex(passwordHash) }, 0, 512), testActor);
+                    passwordCrackingWorker.tell(new PasswordCrackingWorker.TaskCrackPasswordRangeMessage(new int[] { lineID }, "FG", passwordLength, new byte[][] { Util.decodeHex(passwordHash) }, 900, 1024), testActor);
+
+                    this.expectMsg(new Master.PasswordRangeCrackedMessage(PasswordCrackingWorker.NO_TASK_ID, new int[] { lineID }, new String[] { null }, passwordCrackingWorker));
+                    this.expectMsg(new Master.PasswordRangeCrackedMessage(PasswordCrackingWorker.NO_TASK_ID, new int[] { lineID }, new String[] { PasswordCrackingWorkerTest.crackedPassword }, passwordCrackingWorker));
+
+                    // Will wait for the rest of the within duration
+                    expectNoMessage();
+                    return null;
+                });
+            }
+        };
+    }
+
+    @Test
+    public void testOffloadedPasswordCracking() {
+        // Tests if the hashing loops report the same results when they run on the cracking dispatcher.
+        ConfigurationSingleton.get().setOffloadCracking(true);
+        try {
+            new TestKit(system) {
+                {   ActorRef testActor = system.actorOf(PasswordCrackingWorkerTest.TestActor.props(this.getRef()), Master.DEFAULT_NAME);
+
+                    ActorRef passwordCrackingWorker = system.actorOf(PasswordCrackingWorker.props(), "passwordCrackingWorker");
+
+                    within(Duration.ofSeconds(60), () -> {
+
+                        this.expectMsg(new Master.RegistrationMessage());
+
+                        // The hint that misses "C" is the third one.
+                        passwordCrackingWorker.tell(new PasswordCrackingWorker.TaskCrackHintsMessage(passwordChars, 2, "", 0, Util.decodeHex(hintHashs)), testActor);
+                        this.expectMsg(new Master.HintsCrackedMessage('C', new int[] { 2 }, passwordCrackingWorker));
+                        this.expectMsg(new Master.HintTaskCompletedMessage(PasswordCrackingWorker.NO_TASK_ID, passwordCrackingWorker));
+
+                        passwordCrackingWorker.tell(new PasswordCrackingWorker.TaskCrackPasswordRangeMessage(new int[] { lineID }, "FG", passwordLength, new byte[][] { Util.decodeHex(passwordHash) }, 0, 512), testActor);
+                        this.expectMsg(new Master.PasswordRangeCrackedMessage(PasswordCrackingWorker.NO_TASK_ID, new int[] { lineID }, new String[] { null }, passwordCrackingWorker));
+
+                        // Will wait for the rest of the within duration
+                        expectNoMessage();
+                        return null;
+                    });
+                }
+            };
+        } finally {
+            ConfigurationSingleton.get().setOffloadCracking(false);
+        }
+    }
+
+    @Test
+    public void testGroupedPasswordRangeCracking() {
+        // Tests if one range reports the passwords of all lines that share the password chars and length.
         new TestKit(system) {
             {   ActorRef testActor = system.actorOf(PasswordCrackingWorkerTest.TestActor.props(this.getRef()), Master.DEFAULT_NAME);
 
                 ActorRef passwordCrackingWorker = system.actorOf(PasswordCrackingWorker.props(), "passwordCrackingWorker");
 
-                PasswordCrackingWorker.TaskCrackPasswordMessage message = new PasswordCrackingWorker.TaskCrackPasswordMessage(lineID, passwordChars, passwordLength, passwordHash, hintHashs);
-                passwordCrackingWorker.tell(message, testActor);
+                within(Duration.ofSeconds(60), () -> {
+
+                    this.expectMsg(new Master.RegistrationMessage());
+
+                    // "FFFFFFFFFF" is combination 0 of "FG".
+                    int[] lineIDs = { lineID, lineID + 1, lineID + 2 };
+                    byte[][] passwords = Util.decodeHex(new String[] { passwordHash, Util.hash("FFFFFFFFFF"), Util.hash("GGGGGGGGGG") });
+                    passwordCrackingWorker.tell(new PasswordCrackingWorker.TaskCrackPasswordRangeMessage(lineIDs, "FG", passwordLength, passwords, 0, 1000), testActor);
+
+                    this.expectMsg(new Master.PasswordRangeCrackedMessage(PasswordCrackingWorker.NO_TASK_ID, lineIDs, new String[] { PasswordCrackingWorkerTest.crackedPassword, "FFFFFFFFFF", null }, passwordCrackingWorker));
+
+                    // Will wait for the rest of the within duration
+                    expectNoMessage();
+                    return null;
+                });
+            }
+        };
+    }
+
+    @Test
+    public void testCandidateOrder() {
+        // Tests if the candidate hasher enumerates the combinations from its start index on in the order of their indices.
+        String[] combinations = new String[27];
+        byte[][] digests = new byte[combinations.length][];
+        for (int i = 0; i < combinations.length; i++) {
+            combinations[i] = "" + "ABC".charAt(i / 9) + "ABC".charAt(i / 3 % 3) + "ABC".charAt(i % 3);
+            digests[i] = Util.decodeHex(Util.hash(combinations[i]));
+        }
+        HintDictionary allCombinations = new HintDictionary(digests);
+
+        CandidateHasher candidates = new CandidateHasher("ABC", 3, 5);
+        for (int i = 5; i < combinations.length; i++) {
+            int position = candidates.hashNext(Long.MAX_VALUE, allCombinations);
+            assertEquals(i, allCombinations.getEntry(position));
+            assertEquals(combinations[i], candidates.getMatch());
+            assertEquals(1, candidates.getNumHashed());
+        }
+        assertTrue(candidates.isExhausted());
+
+        // Without matches, each call hashes up to the end of the last position or the given maximum.
+        candidates = new CandidateHasher("ABC", 3, 0);
+        assertEquals(-1, candidates.hashNext(2, new HintDictionary(new byte[0][])));
+        assertEquals(2, candidates.getNumHashed());
+        assertEquals(-1, candidates.hashNext(Long.MAX_VALUE, new HintDictionary(new byte[0][])));
+        assertEquals(1, candidates.getNumHashed());
+        assertEquals(3, allCombinations.getEntry(candidates.hashNext(Long.MAX_VALUE, allCombinations)));
+    }
+
+    @Test
+    public void testTaskRevocation() {
+        // Tests if a queued task can be taken back while the worker is busy with another one.
+        new TestKit(system) {
+            {   ActorRef testActor = system.actorOf(PasswordCrackingWorkerTest.TestActor.props(this.getRef()), Master.DEFAULT_NAME);
+
+                ActorRef passwordCrackingWorker = system.actorOf(PasswordCrackingWorker.props(), "passwordCrackingWorker");
+
+                within(Duration.ofSeconds(60), () -> {
+
+                    this.expectMsg(new Master.RegistrationMessage());
+
+                    // The first range is far too large to be finished before the other messages arrive.
+                    PasswordCrackingWorker.TaskCrackPasswordRangeMessage range = new PasswordCrackingWorker.TaskCrackPasswordRangeMessage(
+                            new int[] { lineID }, passwordChars, passwordLength, new byte[][] { Util.decodeHex(passwordHash) }, 0, 1000000000L);
+                    passwordCrackingWorker.tell(new PasswordCrackingWorker.AssignTaskMessage(1, range), testActor);
+                    passwordCrackingWorker.tell(new PasswordCrackingWorker.AssignTaskMessage(2, range), testActor);
+                    passwordCrackingWorker.tell(new PasswordCrackingWorker.RevokeTaskMessage(2), testActor);
+                    passwordCrackingWorker.tell(new PasswordCrackingWorker.RevokeTaskMessage(1), testActor);
+                    passwordCrackingWorker.tell(new PasswordCrackingWorker.CancelCrackingMessage(lineID, new int[] { 1 }), testActor);
+
+                    this.expectMsg(new Master.TaskRevokedMessage(2, true, passwordCrackingWorker));
+                    this.expectMsg(new Master.TaskRevokedMessage(1, false, passwordCrackingWorker));
+                    this.expectMsg(new Master.PasswordRangeCrackedMessage(1, new int[] { lineID }, new String[] { null }, passwordCrackingWorker));
+
+                    // Will wait for the rest of the within duration
+                    expectNoMessage();
+                    return null;
+                });
+            }
+        };
+    }
+
+    @Test
+    public void testHintTaskCancellation() {
+        // Tests if a cancellation stops the running hint task within a block and drops the queued one and those assigned later.
+        new TestKit(system) {
+            {   ActorRef testActor = system.actorOf(PasswordCrackingWorkerTest.TestActor.props(this.getRef()), Master.DEFAULT_NAME);
+
+                ActorRef passwordCrackingWorker = system.actorOf(PasswordCrackingWorker.props(), "passwordCrackingWorker");
+
+                within(Duration.ofSeconds(10), () -> {
+
+                    this.expectMsg(new Master.RegistrationMessage());
+
+                    // Each task has 12! permutations and no matching hint, so neither would end within the duration.
+                    byte[][] hints = { Util.decodeHex(passwordHash) };
+                    passwordCrackingWorker.tell(new PasswordCrackingWorker.AssignTaskMessage(1,
+                            new PasswordCrackingWorker.TaskCrackHintsMessage("ABCDEFGHIJKLM", 0, "", 5, hints)), testActor);
+                    passwordCrackingWorker.tell(new PasswordCrackingWorker.AssignTaskMessage(2,
+                            new PasswordCrackingWorker.TaskCrackHintsMessage("ABCDEFGHIJKLM", 1, "", 5, hints)), testActor);
+                    passwordCrackingWorker.tell(new PasswordCrackingWorker.CancelHintsMessage(5, PasswordCrackingWorker.ALL_MISSING_CHARS, new int[] { 1, 2, 3 }), testActor);
+                    // An assignment that the cancellation overtook on its way through the proxies.
+                    passwordCrackingWorker.tell(new PasswordCrackingWorker.AssignTaskMessage(3,
+                            new PasswordCrackingWorker.TaskCrackHintsMessage("ABCDEFGHIJKLM", 2, "", 5, hints)), testActor);
+
+                    // The queued and the overtaken task are dropped right away, the running one after its current block.
+                    this.expectMsgAllOf(new Master.HintTaskCompletedMessage(1, passwordCrackingWorker),
+                            new Master.HintTaskCompletedMessage(2, passwordCrackingWorker),
+                            new Master.HintTaskCompletedMessage(3, passwordCrackingWorker));
+
+                    // Will wait for the rest of the within duration
+                    expectNoMessage();
+                    return null;
+                });
+            }
+        };
+    }
+
+    @Test
+    public void testWelcomeRelay() {
+        // Tests if a worker passes the welcome data on once it has received the data itself.
+        new TestKit(system) {
+            {   ActorRef testActor = system.actorOf(PasswordCrackingWorkerTest.TestActor.props(this.getRef()), Master.DEFAULT_NAME);
+
+                ActorRef passwordCrackingWorker = system.actorOf(PasswordCrackingWorker.props(), "passwordCrackingWorker");
+
+                within(Duration.ofSeconds(10), () -> {
+
+                    this.expectMsg(new Master.RegistrationMessage());
+
+                    BloomFilter welcomeData = new BloomFilter(1024, true);
+                    PasswordCrackingWorker.WelcomeMessage welcomeMessage = new PasswordCrackingWorker.WelcomeMessage(welcomeData, Util.hash(welcomeData), testActor);
+                    passwordCrackingWorker.tell(new PasswordCrackingWorker.RelayWelcomeMessage(this.getRef()), testActor);
+                    this.expectNoMessage(Duration.ofMillis(500));
+                    passwordCrackingWorker.tell(welcomeMessage, testActor);
+                    this.expectMsgAllOf(welcomeMessage, new Master.WelcomeReceivedMessage(passwordCrackingWorker));
+                    passwordCrackingWorker.tell(new PasswordCrackingWorker.RelayWelcomeMessage(this.getRef()), testActor);
+                    this.expectMsg(welcomeMessage);
+
+                    // Will wait for the rest of the within duration
+                    expectNoMessage();
+                    return null;
+                });
+            }
+        };
+    }
+
+    @Test
+    public void testSharedWelcomeData() {
+        // Tests if the workers of one actor system keep the same copy of equal welcome data.
+        new TestKit(system) {
+            {   ActorRef testActor = system.actorOf(PasswordCrackingWorkerTest.TestActor.props(this.getRef()), Master.DEFAULT_NAME);
+
+                ActorRef passwordCrackingWorker = system.actorOf(PasswordCrackingWorker.props(), "passwordCrackingWorker");
+                ActorRef otherPasswordCrackingWorker = system.actorOf(PasswordCrackingWorker.props(), "otherPasswordCrackingWorker");
+
+                within(Duration.ofSeconds(10), () -> {
+
+                    this.expectMsg(new Master.RegistrationMessage());
+                    this.expectMsg(new Master.RegistrationMessage());
+
+                    BloomFilter welcomeData = new BloomFilter(1024);
+                    BloomFilter otherWelcomeData = new BloomFilter(1024);
+                    passwordCrackingWorker.tell(new PasswordCrackingWorker.WelcomeMessage(welcomeData, Util.hash(welcomeData), testActor), testActor);
+                    otherPasswordCrackingWorker.tell(new PasswordCrackingWorker.WelcomeMessage(otherWelcomeData, Util.hash(otherWelcomeData), testActor), testActor);
+                    this.expectMsgAllOf(new Master.WelcomeReceivedMessage(passwordCrackingWorker), new Master.WelcomeReceivedMessage(otherPasswordCrackingWorker));
 
-                within(Duration.ofSeconds(6000), () -> {
+                    passwordCrackingWorker.tell(new PasswordCrackingWorker.RelayWelcomeMessage(this.getRef()), testActor);
+                    BloomFilter relayedWelcomeData = this.expectMsgClass(PasswordCrackingWorker.WelcomeMessage.class).getWelcomeData();
+                    otherPasswordCrackingWorker.tell(new PasswordCrackingWorker.RelayWelcomeMessage(this.getRef()), testActor);
+                    assertSame(relayedWelcomeData, this.expectMsgClass(PasswordCrackingWorker.WelcomeMessage.class).getWelcomeData());
 
-                    Master.RegistrationMessage regMessage = new Master.RegistrationMessage();
-                    this.expectMsg(regMessage);
-                    Master.PasswordCrackedMessage expectedMessage = new Master.PasswordCrackedMessage(PasswordCrackingWorkerTest.crackedPassword, PasswordCrackingWorkerTest.lineID, passwordCrackingWorker);
-                    this.expectMsg(expectedMessage);
+                    // The copy is dropped from the cache once no worker holds it anymore.
+                    this.watch(passwordCrackingWorker);
+                    system.stop(passwordCrackingWorker);
+                    this.expectTerminated(passwordCrackingWorker);
+                    this.watch(otherPasswordCrackingWorker);
+                    system.stop(otherPasswordCrackingWorker);
+                    this.expectTerminated(otherPasswordCrackingWorker);
+                    BloomFilter newWelcomeData = new BloomFilter(1024);
+                    assertSame(newWelcomeData, WelcomeDataCache.get(system).intern(Util.hash(newWelcomeData), newWelcomeData));
 
                     // Will wait for the rest of the within duration
                     expectNoMessage();
@@ -0,0 +1,139 @@
+package de.hpi.ddm.actors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.opencsv.CSVReader;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.testkit.javadsl.TestKit;
+import de.hpi.ddm.actors.utils.PasswordFileReader;
+import de.hpi.ddm.actors.utils.Util;
+import de.hpi.ddm.configuration.Configuration;
+import de.hpi.ddm.singletons.ConfigurationSingleton;
+import de.hpi.ddm.singletons.DatasetDescriptorSingleton;
+import de.hpi.ddm.structures.PasswordRecord;
+import de.hpi.ddm.systems.MasterSystem;
+
+public class ReaderTest {
+
+	static ActorSystem system;
+
+	@Before
+	public void setUp() throws Exception {
+		final Configuration c = ConfigurationSingleton.get();
+
+		final Config config = ConfigFactory.parseString(
+				"akka.remote.artery.canonical.hostname = \"" + c.getHost() + "\"\n" +
+				"akka.remote.artery.canonical.port = " + c.getPort() + "\n" +
+				"akka.cluster.roles = [" + MasterSystem.MASTER_ROLE + "]\n" +
+				"akka.cluster.seed-nodes = [\"akka://" + c.getActorSystemName() + "@" + c.getMasterHost() + ":" + c.getMasterPort() + "\"]")
+			.withFallback(ConfigFactory.load("application"));
+
+		system = ActorSystem.create(c.getActorSystemName(), config);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestKit.shutdownActorSystem(system);
+	}
+
+	@Test
+	public void testReadingTheDataset() throws Exception {
+		// Tests if the records of the dataset hold the same values that a CSV parser reads from it.
+		List<String[]> lines = new ArrayList<>();
+		try (CSVReader csvReader = DatasetDescriptorSingleton.get().createCSVReader()) {
+			String[] line;
+			while ((line = csvReader.readNext()) != null)
+				lines.add(line);
+		}
+
+		new TestKit(system) {
+			{
+				ActorRef reader = system.actorOf(Reader.props(), Reader.DEFAULT_NAME);
+
+				within(Duration.ofSeconds(5), () -> {
+					List<PasswordRecord> records = new ArrayList<>();
+					List<PasswordRecord> batch;
+					do {
+						reader.tell(new Reader.ReadMessage(), this.getRef());
+						batch = this.expectMsgClass(Master.BatchMessage.class).getRecords();
+						records.addAll(batch);
+					} while (!batch.isEmpty());
+
+					assertEquals(lines.size(), records.size());
+					for (int i = 0; i < lines.size(); i++) {
+						String[] line = lines.get(i);
+						PasswordRecord record = records.get(i);
+						assertEquals(Integer.parseInt(line[0]), record.getLineID());
+						assertEquals(line[2], record.getPasswordChars());
+						assertSame(records.get(0).getPasswordChars(), record.getPasswordChars());
+						assertEquals(Integer.parseInt(line[3]), record.getPasswordLength());
+						assertEquals(line[4], Util.encodeHex(record.getPasswordDigest()));
+						assertArrayEquals(Util.decodeHex(Arrays.copyOfRange(line, 5, line.length)), record.getHintDigests());
+					}
+					return null;
+				});
+			}
+		};
+	}
+
+	@Test
+	public void testBatchSizes() {
+		// Tests if each batch holds as many records as requested and the last one fewer.
+		new TestKit(system) {
+			{
+				ActorRef reader = system.actorOf(Reader.props(), Reader.DEFAULT_NAME);
+
+				within(Duration.ofSeconds(5), () -> {
+					reader.tell(new Reader.ReadMessage(3), this.getRef());
+					assertEquals(3, this.expectMsgClass(Master.BatchMessage.class).getRecords().size());
+					reader.tell(new Reader.ReadMessage(), this.getRef());
+					assertEquals(ConfigurationSingleton.get().getBufferSize(), this.expectMsgClass(Master.BatchMessage.class).getRecords().size());
+					reader.tell(new Reader.ReadMessage(1000), this.getRef());
+					List<PasswordRecord> records = this.expectMsgClass(Master.BatchMessage.class).getRecords();
+					assertEquals(100 - 3 - ConfigurationSingleton.get().getBufferSize(), records.size());
+					assertEquals(4 + ConfigurationSingleton.get().getBufferSize(), records.get(0).getLineID());
+					return null;
+				});
+			}
+		};
+	}
+
+	@Test
+	public void testReadingIrregularLines() throws Exception {
+		// Tests if blank lines, CRLF line ends, lines with a different number of fields and a missing final newline are handled.
+		String hash = PasswordCrackingWorkerTest.passwordHash;
+		File file = File.createTempFile("passwords", ".csv");
+		file.deleteOnExit();
+		Files.write(file.toPath(), ("ID;Name;PasswordChars;PasswordLength;Password;Hint1\r\n" +
+				"1;Sophia;ABC;3;" + hash + ";" + hash + "\r\n" +
+				"\n" +
+				"2;Jackson;ABC;3;" + hash + "\n" +
+				"3; Emma; ABC; 3; " + hash + "; " + hash).getBytes(StandardCharsets.UTF_8));
+
+		try (PasswordFileReader reader = new PasswordFileReader(file.toPath(), StandardCharsets.UTF_8, ';', true, true, true)) {
+			PasswordRecord first = reader.next();
+			assertEquals(new PasswordRecord(1, "ABC", 3, Util.decodeHex(hash), new byte[][] { Util.decodeHex(hash) }), first);
+			assertEquals(new PasswordRecord(3, "ABC", 3, Util.decodeHex(hash), new byte[][] { Util.decodeHex(hash) }), reader.next());
+			assertNull(reader.next());
+		}
+	}
+}